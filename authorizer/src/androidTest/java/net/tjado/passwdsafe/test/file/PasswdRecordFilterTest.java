@@ -0,0 +1,65 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.file;
+
+import net.tjado.passwdsafe.file.PasswdExpiryFilter;
+import net.tjado.passwdsafe.file.PasswdRecordFilter;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the PasswdRecordFilter class
+ */
+public class PasswdRecordFilterTest
+{
+    private static final int LITERAL_FLAGS =
+            Pattern.LITERAL | Pattern.CASE_INSENSITIVE;
+
+    /** Test whether a filter refines another */
+    @Test
+    public void testRefines()
+    {
+        PasswdRecordFilter prev = query("ban", LITERAL_FLAGS);
+        assertTrue(query("bank", LITERAL_FLAGS).refines(prev));
+        assertTrue(query("uban", LITERAL_FLAGS).refines(prev));
+        assertTrue(query("ban", LITERAL_FLAGS).refines(prev));
+        assertFalse(query("ba", LITERAL_FLAGS).refines(prev));
+        assertFalse(query("BANK", LITERAL_FLAGS).refines(prev));
+        assertFalse(query("bank", LITERAL_FLAGS).refines(null));
+
+        // The flags and options must be the same
+        assertFalse(query("bank", Pattern.LITERAL).refines(prev));
+        assertFalse(new PasswdRecordFilter(
+                Pattern.compile("bank", LITERAL_FLAGS),
+                PasswdRecordFilter.OPTS_NO_GROUP).refines(prev));
+
+        // Regex queries are not refined
+        PasswdRecordFilter regex = query("ban", Pattern.CASE_INSENSITIVE);
+        assertFalse(query("bank", Pattern.CASE_INSENSITIVE).refines(regex));
+        assertFalse(query("bank", LITERAL_FLAGS).refines(regex));
+
+        PasswdRecordFilter expiry =
+                new PasswdRecordFilter(PasswdExpiryFilter.EXPIRED, null);
+        assertFalse(expiry.refines(prev));
+        assertFalse(query("bank", LITERAL_FLAGS).refines(expiry));
+    }
+
+    /**
+     * Create a query filter
+     */
+    private static PasswdRecordFilter query(String query, int flags)
+    {
+        return new PasswdRecordFilter(Pattern.compile(query, flags),
+                                      PasswdRecordFilter.OPTS_DEFAULT);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.file;
+
+import net.tjado.passwdsafe.file.RecordSearchIndex;
+
+import org.junit.Test;
+import org.pwsafe.lib.file.PwsFile;
+import org.pwsafe.lib.file.PwsFileFactory;
+import org.pwsafe.lib.file.PwsRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the RecordSearchIndex class
+ */
+public class RecordSearchIndexTest
+{
+    private static final PwsFile FILE = PwsFileFactory.newFile();
+
+    /** Test finding candidates */
+    @Test
+    public void testFind()
+    {
+        RecordSearchIndex index = new RecordSearchIndex();
+        PwsRecord rec1 = FILE.newRecord();
+        PwsRecord rec2 = FILE.newRecord();
+        index.put(rec1, "Bank Account", "user", null, "Notes\nMore");
+        index.put(rec2, "Email", "bankuser", "http://example.com");
+        assertEquals(2, index.size());
+
+        assertCandidates(index.findCandidates("bank"), rec1, rec2);
+        assertCandidates(index.findCandidates("BANK"), rec1, rec2);
+        assertCandidates(index.findCandidates("k acc"), rec1);
+        assertCandidates(index.findCandidates("EXAMPLE.COM"), rec2);
+        assertCandidates(index.findCandidates("s\nm"), rec1);
+        assertCandidates(index.findCandidates("missing"));
+        assertCandidates(index.findCandidates("kus"), rec2);
+        assertNull(index.findCandidates("ba"));
+        assertNull(index.findCandidates(""));
+    }
+
+    /** Test updating and removing records */
+    @Test
+    public void testUpdate()
+    {
+        RecordSearchIndex index = new RecordSearchIndex();
+        PwsRecord rec = FILE.newRecord();
+        index.put(rec, "first");
+        assertCandidates(index.findCandidates("first"), rec);
+
+        index.put(rec, "second");
+        assertEquals(1, index.size());
+        assertCandidates(index.findCandidates("first"));
+        assertCandidates(index.findCandidates("second"), rec);
+
+        index.remove(rec);
+        assertEquals(0, index.size());
+        assertCandidates(index.findCandidates("second"));
+
+        index.put(rec, "third");
+        index.clear();
+        assertEquals(0, index.size());
+        assertCandidates(index.findCandidates("third"));
+    }
+
+    /** Test records which are always candidates */
+    @Test
+    public void testUnindexed()
+    {
+        RecordSearchIndex index = new RecordSearchIndex();
+        PwsRecord unindexed = FILE.newRecord();
+        PwsRecord sharpS = FILE.newRecord();
+        PwsRecord other = FILE.newRecord();
+        index.put(unindexed, (String[])null);
+        index.put(sharpS, "Straße");
+        index.put(other, "Street", "Ünïcode");
+
+        assertCandidates(index.findCandidates("strasse"), unindexed, sharpS);
+        assertCandidates(index.findCandidates("ÜNÏ"),
+                         unindexed, sharpS, other);
+        assertNull(index.findCandidates("aße"));
+
+        index.put(sharpS, "Strasse");
+        assertCandidates(index.findCandidates("strasse"), unindexed, sharpS);
+        index.remove(unindexed);
+        assertCandidates(index.findCandidates("tree"), other);
+    }
+
+    /** Test the candidates include all matches of random strings */
+    @Test
+    public void testRandom()
+    {
+        Random rand = new Random(42);
+        RecordSearchIndex index = new RecordSearchIndex();
+        List<PwsRecord> recs = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            PwsRecord rec = FILE.newRecord();
+            String field = randomString(rand, 5 + rand.nextInt(20));
+            recs.add(rec);
+            fields.add(field);
+            index.put(rec, field);
+        }
+        for (int i = 0; i < 50; ++i) {
+            int idx = rand.nextInt(recs.size());
+            String field = randomString(rand, 5 + rand.nextInt(20));
+            fields.set(idx, field);
+            index.put(recs.get(idx), field);
+        }
+
+        for (int i = 0; i < 200; ++i) {
+            String query = randomString(rand, 3 + rand.nextInt(2));
+            Set<PwsRecord> candidates = index.findCandidates(query);
+            assertNotNull(candidates);
+            String lowerQuery = query.toLowerCase(Locale.US);
+            for (int j = 0; j < recs.size(); ++j) {
+                if (fields.get(j).toLowerCase(Locale.US).contains(
+                        lowerQuery)) {
+                    assertTrue(candidates.contains(recs.get(j)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Assert the candidates are the expected records
+     */
+    private static void assertCandidates(Set<PwsRecord> candidates,
+                                         PwsRecord... expected)
+    {
+        assertEquals(expected.length, candidates.size());
+        for (PwsRecord rec: expected) {
+            assertTrue(candidates.contains(rec));
+        }
+        assertFalse(candidates.contains(FILE.newRecord()));
+    }
+
+    /**
+     * Create a random string from a small alphabet
+     */
+    private static String randomString(Random rand, int len)
+    {
+        String chars = "abcABC ";
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < len; ++i) {
+            str.append(chars.charAt(rand.nextInt(chars.length())));
+        }
+        return str.toString();
+    }
+}
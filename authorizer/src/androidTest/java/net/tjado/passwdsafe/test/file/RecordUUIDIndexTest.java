@@ -0,0 +1,123 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.file;
+
+import net.tjado.passwdsafe.file.RecordUUIDIndex;
+
+import org.junit.Test;
+import org.pwsafe.lib.UUID;
+import org.pwsafe.lib.file.PwsFile;
+import org.pwsafe.lib.file.PwsFileFactory;
+import org.pwsafe.lib.file.PwsRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the RecordUUIDIndex class
+ */
+public class RecordUUIDIndexTest
+{
+    private static final PwsFile FILE = PwsFileFactory.newFile();
+
+    /** Test adding and getting records */
+    @Test
+    public void testPutGet()
+    {
+        RecordUUIDIndex index = new RecordUUIDIndex();
+        List<UUID> uuids = new ArrayList<>();
+        List<PwsRecord> recs = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            UUID uuid = new UUID();
+            PwsRecord rec = FILE.newRecord();
+            uuids.add(uuid);
+            recs.add(rec);
+            assertNull(index.put(uuid, rec));
+        }
+        assertEquals(1000, index.size());
+
+        for (int i = 0; i < uuids.size(); ++i) {
+            UUID uuid = uuids.get(i);
+            PwsRecord rec = recs.get(i);
+            String str = uuid.toString();
+            assertSame(rec, index.get(uuid));
+            assertSame(rec, index.get(new UUID(uuid.getBytes())));
+            assertSame(rec, index.get(str));
+            assertSame(rec, index.get(str.toUpperCase(Locale.US)));
+            assertSame(rec, index.getHex(toRef(str), 2));
+        }
+
+        PwsRecord rec = FILE.newRecord();
+        assertSame(recs.get(0), index.put(uuids.get(0), rec));
+        assertSame(rec, index.get(uuids.get(0)));
+        assertEquals(1000, index.size());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.get(uuids.get(0)));
+    }
+
+    /** Test removing records */
+    @Test
+    public void testRemove()
+    {
+        RecordUUIDIndex index = new RecordUUIDIndex();
+        List<UUID> uuids = new ArrayList<>();
+        List<PwsRecord> recs = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            UUID uuid = new UUID();
+            PwsRecord rec = FILE.newRecord();
+            uuids.add(uuid);
+            recs.add(rec);
+            index.put(uuid, rec);
+        }
+
+        for (int i = 0; i < uuids.size(); i += 2) {
+            assertSame(recs.get(i), index.remove(uuids.get(i)));
+            assertNull(index.remove(uuids.get(i)));
+        }
+        assertEquals(250, index.size());
+        for (int i = 0; i < uuids.size(); ++i) {
+            PwsRecord expected = ((i % 2) == 0) ? null : recs.get(i);
+            assertSame(expected, index.get(uuids.get(i)));
+        }
+    }
+
+    /** Test lookups with invalid UUID strings */
+    @Test
+    public void testInvalid()
+    {
+        RecordUUIDIndex index = new RecordUUIDIndex();
+        UUID uuid = new UUID(new byte[16]);
+        index.put(uuid, FILE.newRecord());
+        String str = uuid.toString();
+
+        assertNull(index.get((String)null));
+        assertNull(index.get(""));
+        assertNull(index.get(str.substring(1)));
+        assertNull(index.get(str.replace('-', '0')));
+        assertNull(index.get(str.replace('}', ')')));
+        assertNull(index.get(str.replaceFirst("0", "g")));
+        assertNull(index.get(str.replaceFirst("0", "٠")));
+        assertNull(index.getHex(toRef(str), 3));
+        assertNull(index.getHex(toRef(str).replaceFirst("0", "x"), 2));
+    }
+
+    /**
+     * Convert a UUID string to an alias reference
+     */
+    private static String toRef(String uuid)
+    {
+        return "[[" + uuid.replaceAll("[{}-]", "") + "]]";
+    }
+}
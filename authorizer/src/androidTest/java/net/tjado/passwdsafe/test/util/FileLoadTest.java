@@ -0,0 +1,551 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pwsafe.lib.Util;
+import org.pwsafe.lib.crypto.HmacPws;
+import org.pwsafe.lib.crypto.TwofishPws;
+import org.pwsafe.lib.exception.MemoryKeyException;
+import org.pwsafe.lib.file.Owner;
+import org.pwsafe.lib.file.PwsField;
+import org.pwsafe.lib.file.PwsFile;
+import org.pwsafe.lib.file.PwsFileFactory;
+import org.pwsafe.lib.file.PwsFileStorage;
+import org.pwsafe.lib.file.PwsFileV3;
+import org.pwsafe.lib.file.PwsIntegerField;
+import org.pwsafe.lib.file.PwsPasswdUnicodeField;
+import org.pwsafe.lib.file.PwsPassword;
+import org.pwsafe.lib.file.PwsRecord;
+import org.pwsafe.lib.file.PwsRecordV3;
+import org.pwsafe.lib.file.PwsStreamStorage;
+import org.pwsafe.lib.file.PwsStringUnicodeField;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for loading V3 files, both fully and with lazily loaded records.
+ * The loaded records are checked against a simple sequential decryption of
+ * the file.
+ */
+public final class FileLoadTest
+{
+    private static final String PASSWD = "löad";
+    private static final String REF = "0123456789abcdef0123456789ABCDEF";
+
+    /** Size of the chunks in which the loader reads the records */
+    private static final int CHUNK_SIZE = 128 * 1024;
+    private static final int BLOCK_SIZE = TwofishPws.BLOCK_SIZE;
+    private static final int HEADER_LEN = 152;
+    private static final int HMAC_LEN = 32;
+    private static final int TRAILER_LEN = BLOCK_SIZE + HMAC_LEN;
+    private static final byte[] EOF_MARKER = "PWS3-EOFPWS3-EOF".getBytes();
+
+    /** Minimum length of the notes of the padding record; a single block */
+    private static final int MIN_PAD_LEN = BLOCK_SIZE - 5;
+
+    private static final int[] FIELD_TYPES = {
+            PwsRecordV3.UUID, PwsRecordV3.GROUP, PwsRecordV3.TITLE,
+            PwsRecordV3.USERNAME, PwsRecordV3.NOTES, PwsRecordV3.PASSWORD,
+            PwsRecordV3.CREATION_TIME, PwsRecordV3.URL,
+            PwsRecordV3.FIDO_KEY_USE_COUNTER };
+
+    private File itsFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        itsFile = File.createTempFile("load", ".psafe3");
+        assertTrue(itsFile.delete());
+    }
+
+    @After
+    public void tearDown()
+    {
+        //noinspection ResultOfMethodCallIgnored
+        itsFile.delete();
+    }
+
+    @Test
+    public void testLoad() throws Exception
+    {
+        saveFile(300, MIN_PAD_LEN);
+        checkLoads();
+    }
+
+    @Test
+    public void testChunkBoundaries() throws Exception
+    {
+        // Place the end of file marker and the HMAC at and around the ends
+        // of the chunks
+        int[] recordsLengths = {
+                CHUNK_SIZE - 2 * BLOCK_SIZE, CHUNK_SIZE - BLOCK_SIZE,
+                CHUNK_SIZE, CHUNK_SIZE + BLOCK_SIZE,
+                2 * CHUNK_SIZE - TRAILER_LEN, 2 * CHUNK_SIZE };
+        for (int recordsLength: recordsLengths) {
+            createFile(recordsLength);
+            checkLoads();
+        }
+    }
+
+    @Test
+    public void testTampered() throws Exception
+    {
+        saveFile(300, MIN_PAD_LEN);
+        byte[] orig = readFile();
+        int recordsEnd = orig.length - TRAILER_LEN;
+        int middle = HEADER_LEN +
+                     ((recordsEnd - HEADER_LEN) / (2 * BLOCK_SIZE)) *
+                     BLOCK_SIZE;
+        int[] positions = {
+                HEADER_LEN + 3, middle + 7, recordsEnd - 1,
+                recordsEnd + 5, recordsEnd + BLOCK_SIZE + 11,
+                orig.length - 1 };
+        for (int pos: positions) {
+            byte[] tampered = orig.clone();
+            tampered[pos] ^= 1;
+            writeFile(tampered);
+            checkLoadFails("tampered at " + pos);
+        }
+
+        // A file cut short within the HMAC or the end of file marker
+        for (int cut: new int[] { HMAC_LEN / 2, HMAC_LEN + 1 }) {
+            writeFile(Arrays.copyOf(orig, orig.length - cut));
+            checkLoadFails("cut by " + cut);
+        }
+    }
+
+    @Test
+    public void testShortReads() throws Exception
+    {
+        createFile(CHUNK_SIZE + BLOCK_SIZE);
+        byte[] bytes = readFile();
+        Map<String, Map<Integer, byte[]>> expected = readReference(bytes);
+        for (boolean lazy: new boolean[] { false, true }) {
+            PwsFile file = loadStream(
+                    new ShortReadStream(new ByteArrayInputStream(bytes)),
+                    lazy);
+            checkRecords(expected, file);
+            file.dispose();
+        }
+    }
+
+    @Test
+    public void testLazyDispose() throws Exception
+    {
+        saveFile(20, MIN_PAD_LEN);
+        Map<String, Map<Integer, byte[]>> expected =
+                readReference(readFile());
+
+        PwsFile file = load(true);
+        Iterator<PwsRecord> iter = file.getRecords();
+        PwsRecord decoded = iter.next();
+        PwsField decodedPasswd = decoded.getField(PwsRecordV3.PASSWORD);
+        PwsRecord lazy = iter.next();
+        byte[] uuid = lazy.getField(PwsRecordV3.UUID).getBytes();
+        file.dispose();
+
+        // The fields decoded when loading remain, but the secret fields can
+        // no longer be decoded or unsealed
+        assertArrayEquals(
+                expected.get(Util.bytesToHex(uuid)).get(PwsRecordV3.TITLE),
+                lazy.getField(PwsRecordV3.TITLE).getBytes());
+        for (int i = 0; i < 2; ++i) {
+            try {
+                lazy.getField(PwsRecordV3.PASSWORD);
+                throw new AssertionError("Decoded after dispose");
+            } catch (MemoryKeyException e) {
+                // Expected
+            }
+        }
+        try {
+            decodedPasswd.getBytes();
+            throw new AssertionError("Unsealed after dispose");
+        } catch (MemoryKeyException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testLazyConcurrentReads() throws Exception
+    {
+        saveFile(500, MIN_PAD_LEN);
+        Map<String, Map<Integer, byte[]>> expected =
+                readReference(readFile());
+        PwsFile file = load(true);
+        List<PwsRecord> recs = new ArrayList<>();
+        for (Iterator<PwsRecord> iter = file.getRecords(); iter.hasNext(); ) {
+            recs.add(iter.next());
+        }
+
+        // Threads reading the fields decoded when loading run alongside
+        // threads which decode the secret fields
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; ++t) {
+                final int[] types = ((t % 2) == 0) ?
+                        new int[] { PwsRecordV3.TITLE, PwsRecordV3.USERNAME,
+                                    PwsRecordV3.NOTES } :
+                        new int[] { PwsRecordV3.PASSWORD };
+                results.add(executor.submit((Callable<Integer>)() -> {
+                    int numChecked = 0;
+                    for (PwsRecord rec: recs) {
+                        Map<Integer, byte[]> fields = expected.get(
+                                Util.bytesToHex(rec.getField(
+                                        PwsRecordV3.UUID).getBytes()));
+                        for (int type: types) {
+                            checkField(fields.get(type), rec.getField(type));
+                            ++numChecked;
+                        }
+                    }
+                    return numChecked;
+                }));
+            }
+            for (Future<Integer> result: results) {
+                assertTrue(result.get() >= recs.size());
+            }
+        } finally {
+            executor.shutdownNow();
+            file.dispose();
+        }
+    }
+
+    /**
+     * Check the records of the file when loaded fully and lazily from a
+     * file and from a stream
+     */
+    private void checkLoads() throws Exception
+    {
+        byte[] bytes = readFile();
+        Map<String, Map<Integer, byte[]>> expected = readReference(bytes);
+        for (boolean lazy: new boolean[] { false, true }) {
+            PwsFile file = load(lazy);
+            checkRecords(expected, file);
+            file.dispose();
+
+            file = loadStream(new ByteArrayInputStream(bytes), lazy);
+            checkRecords(expected, file);
+            file.dispose();
+        }
+    }
+
+    /**
+     * Check that loading the file fails or reports load errors both fully and
+     * lazily
+     */
+    private void checkLoadFails(String msg) throws Exception
+    {
+        for (boolean lazy: new boolean[] { false, true }) {
+            PwsFile file;
+            try {
+                file = load(lazy);
+            } catch (IOException e) {
+                // Expected
+                continue;
+            }
+            try {
+                assertNotNull("Loaded file " + msg, file.getLoadErrors());
+            } finally {
+                file.dispose();
+            }
+        }
+    }
+
+    /**
+     * Check the loaded records against the expected fields
+     */
+    private static void checkRecords(Map<String, Map<Integer, byte[]>> expected,
+                                     PwsFile file)
+    {
+        assertNull(file.getLoadErrors());
+        assertEquals(expected.size(), file.getRecordCount());
+        for (Iterator<PwsRecord> iter = file.getRecords(); iter.hasNext(); ) {
+            PwsRecord rec = iter.next();
+            Map<Integer, byte[]> fields = expected.get(
+                    Util.bytesToHex(rec.getField(PwsRecordV3.UUID).getBytes()));
+            assertNotNull(fields);
+            for (int type: FIELD_TYPES) {
+                checkField(fields.get(type), rec.getField(type));
+            }
+        }
+    }
+
+    /**
+     * Check a field against its expected value
+     */
+    private static void checkField(byte[] expected, PwsField field)
+    {
+        if (expected == null) {
+            assertNull(field);
+        } else {
+            assertNotNull(field);
+            assertArrayEquals(expected, field.getBytes());
+        }
+    }
+
+    /**
+     * Read the records of a file by decrypting them in a single pass as a
+     * reference for the loader
+     *
+     * @return The fields by type of the records by UUID
+     */
+    private Map<String, Map<Integer, byte[]>> readReference(byte[] bytes)
+            throws Exception
+    {
+        byte[] recordKey;
+        byte[] hmacKey;
+        PwsFileV3 file = (PwsFileV3)load(false);
+        try {
+            recordKey = file.decryptedRecordKey.clone();
+            hmacKey = file.decryptedHmacKey.clone();
+        } finally {
+            file.dispose();
+        }
+
+        int eofPos = -1;
+        for (int pos = HEADER_LEN; pos + BLOCK_SIZE <= bytes.length;
+             pos += BLOCK_SIZE) {
+            if (Arrays.equals(EOF_MARKER, Arrays.copyOfRange(
+                    bytes, pos, pos + BLOCK_SIZE))) {
+                eofPos = pos;
+                break;
+            }
+        }
+        assertTrue(eofPos > 0);
+        assertEquals(bytes.length, eofPos + TRAILER_LEN);
+
+        byte[] plain = new byte[eofPos - HEADER_LEN];
+        new TwofishPws(recordKey, false,
+                       Arrays.copyOfRange(bytes, HEADER_LEN - BLOCK_SIZE,
+                                          HEADER_LEN))
+                .processCBC(bytes, HEADER_LEN, plain.length, plain, 0);
+        HmacPws hmac = new HmacPws(hmacKey);
+
+        Map<String, Map<Integer, byte[]>> recs = new TreeMap<>();
+        Map<Integer, byte[]> rec = new TreeMap<>();
+        boolean isHeader = true;
+        int pos = 0;
+        while (pos < plain.length) {
+            int len = Util.getIntFromByteArray(plain, pos);
+            int type = plain[pos + 4] & 0xff;
+            byte[] data = Arrays.copyOfRange(plain, pos + 5, pos + 5 + len);
+            hmac.digest(data);
+            pos += ((5 + len + BLOCK_SIZE - 1) / BLOCK_SIZE) * BLOCK_SIZE;
+            if (type == 0xff) {
+                if (!isHeader) {
+                    recs.put(Util.bytesToHex(rec.get(PwsRecordV3.UUID)),
+                             rec);
+                }
+                isHeader = false;
+                rec = new TreeMap<>();
+            } else {
+                rec.put(type, data);
+            }
+        }
+        assertEquals(plain.length, pos);
+        assertArrayEquals(Arrays.copyOfRange(bytes, eofPos + BLOCK_SIZE,
+                                             bytes.length),
+                          hmac.doFinal());
+        return recs;
+    }
+
+    /**
+     * Create the file with records of a given length before the end of file
+     * marker
+     */
+    private void createFile(int recordsLength) throws Exception
+    {
+        int numRecords = recordsLength / 400;
+        for (int i = 0; i < 20; ++i) {
+            long delta = recordsLength - saveFile(numRecords, MIN_PAD_LEN);
+            if (delta >= 0) {
+                assertEquals(recordsLength,
+                             saveFile(numRecords,
+                                      MIN_PAD_LEN + (int)delta));
+                return;
+            }
+            numRecords -= 1 + (int)(-delta / 200);
+        }
+        throw new AssertionError("File not created: " + recordsLength);
+    }
+
+    /**
+     * Save the file with a number of records followed by a record whose
+     * notes pad the file
+     *
+     * @return The length of the records before the end of file marker
+     */
+    private long saveFile(int numRecords, int padLen) throws Exception
+    {
+        PwsFile file = PwsFileFactory.newFile();
+        try (Owner<PwsPassword> passwd = PwsPassword.create(PASSWD)) {
+            file.setPassphrase(passwd.pass());
+        }
+        for (int i = 0; i < numRecords; ++i) {
+            PwsRecord rec = file.newRecord();
+            rec.setField(new PwsStringUnicodeField(PwsRecordV3.TITLE,
+                                                   "títle" + i));
+            rec.setField(new PwsStringUnicodeField(PwsRecordV3.USERNAME,
+                                                   "user" + i));
+            rec.setField(new PwsStringUnicodeField(PwsRecordV3.GROUP,
+                                                   "group" + (i % 7)));
+            rec.setField(new PwsStringUnicodeField(
+                    PwsRecordV3.NOTES, repeat("nötes ", i % 97)));
+            if ((i % 5) == 0) {
+                rec.setField(new PwsStringUnicodeField(PwsRecordV3.URL,
+                                                       "https://" + i));
+            }
+            String passwd;
+            switch (i % 4) {
+            case 0: {
+                passwd = "[[" + REF + "]]";
+                break;
+            }
+            case 1: {
+                passwd = repeat("löng pässwörd ", 1 + (i % 9));
+                break;
+            }
+            default: {
+                passwd = "pw" + i;
+                break;
+            }
+            }
+            rec.setField(new PwsPasswdUnicodeField(PwsRecordV3.PASSWORD,
+                                                   passwd, file));
+            rec.setField(new PwsIntegerField(PwsRecordV3.FIDO_KEY_USE_COUNTER,
+                                             i));
+            file.add(rec);
+        }
+
+        PwsRecord pad = file.newRecord();
+        pad.setField(new PwsStringUnicodeField(PwsRecordV3.TITLE, "pad"));
+        pad.setField(new PwsStringUnicodeField(PwsRecordV3.NOTES,
+                                               repeat("x", padLen)));
+        file.add(pad);
+
+        //noinspection ResultOfMethodCallIgnored
+        itsFile.delete();
+        file.setStorage(new PwsFileStorage(itsFile.getPath(), null));
+        file.save();
+        file.dispose();
+        return itsFile.length() - HEADER_LEN - TRAILER_LEN;
+    }
+
+    /**
+     * Load the file
+     */
+    private PwsFile load(boolean lazy) throws Exception
+    {
+        try (Owner<PwsPassword> passwd = PwsPassword.create(PASSWD)) {
+            return PwsFileFactory.loadFile(itsFile.getPath(), passwd.pass(),
+                                           lazy);
+        }
+    }
+
+    /**
+     * Load the file from a stream
+     */
+    private static PwsFile loadStream(InputStream is, boolean lazy)
+            throws Exception
+    {
+        try (Owner<PwsPassword> passwd = PwsPassword.create(PASSWD)) {
+            return PwsFileFactory.loadFromStorage(
+                    new PwsStreamStorage("stream", is), passwd.pass(), lazy);
+        }
+    }
+
+    /**
+     * Read the bytes of the file
+     */
+    private byte[] readFile() throws IOException
+    {
+        byte[] bytes = new byte[(int)itsFile.length()];
+        try (FileInputStream is = new FileInputStream(itsFile)) {
+            int pos = 0;
+            while (pos < bytes.length) {
+                int count = is.read(bytes, pos, bytes.length - pos);
+                assertTrue(count > 0);
+                pos += count;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the bytes of the file
+     */
+    private void writeFile(byte[] bytes) throws IOException
+    {
+        try (FileOutputStream os = new FileOutputStream(itsFile)) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * Repeat a string
+     */
+    private static String repeat(String str, int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            sb.append(str);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A stream which returns fewer bytes than requested from each read
+     */
+    private static final class ShortReadStream extends FilterInputStream
+    {
+        private int itsNumReads = 0;
+
+        private ShortReadStream(InputStream is)
+        {
+            super(is);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int readLen = Math.min(len, 1 + (itsNumReads++ * 7) % 61);
+            return super.read(b, off, readLen);
+        }
+
+        @Override
+        public int available()
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pwsafe.lib.file.Owner;
+import org.pwsafe.lib.file.PwsFieldTypeV3;
+import org.pwsafe.lib.file.PwsFileFactory;
+import org.pwsafe.lib.file.PwsFileStorage;
+import org.pwsafe.lib.file.PwsFileV3;
+import org.pwsafe.lib.file.PwsIntegerField;
+import org.pwsafe.lib.file.PwsPasswdUnicodeField;
+import org.pwsafe.lib.file.PwsPassword;
+import org.pwsafe.lib.file.PwsRecord;
+import org.pwsafe.lib.file.PwsRecordV3;
+import org.pwsafe.lib.file.PwsStringUnicodeField;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the journal of changes to a V3 file
+ */
+public final class JournalTest
+{
+    private static final String PASSWD = "journal";
+    private static final long MAX_SIZE = 64 * 1024;
+
+    private File itsFile;
+    private File itsJournal;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        itsFile = File.createTempFile("journal", ".psafe3");
+        assertTrue(itsFile.delete());
+        itsJournal = PwsFileStorage.getJournalFile(itsFile);
+
+        PwsFileV3 file = (PwsFileV3)PwsFileFactory.newFile();
+        try (Owner<PwsPassword> passwd = PwsPassword.create(PASSWD)) {
+            file.setPassphrase(passwd.pass());
+        }
+        for (int i = 0; i < 10; ++i) {
+            PwsRecord rec = file.newRecord();
+            rec.setField(new PwsStringUnicodeField(PwsFieldTypeV3.TITLE,
+                                                   "title" + i));
+            rec.setField(new PwsPasswdUnicodeField(PwsRecordV3.PASSWORD,
+                                                   "pässwörd" + i, file));
+            file.add(rec);
+        }
+        file.setStorage(new PwsFileStorage(itsFile.getPath(), null));
+        file.save();
+        file.dispose();
+    }
+
+    @After
+    public void tearDown()
+    {
+        //noinspection ResultOfMethodCallIgnored
+        itsFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        itsJournal.delete();
+    }
+
+    @Test
+    public void testReplay() throws Exception
+    {
+        for (boolean lazy: new boolean[] { false, true }) {
+            PwsFileV3 file = load(lazy);
+            Iterator<PwsRecord> iter = file.getRecords();
+            iter.next();
+            iter.remove();
+            PwsRecord rec = iter.next();
+            rec.setField(new PwsIntegerField(PwsRecordV3.FIDO_KEY_USE_COUNTER,
+                                             42));
+            rec.setField(new PwsPasswdUnicodeField(PwsRecordV3.PASSWORD,
+                                                   "changed", file));
+            PwsRecord added = file.newRecord();
+            added.setField(new PwsStringUnicodeField(PwsFieldTypeV3.TITLE,
+                                                     "added"));
+            file.add(added);
+            Map<String, String> expected = getRecords(file);
+
+            assertTrue(file.isModified());
+            assertTrue(file.saveToJournal(MAX_SIZE));
+            assertFalse(file.isModified());
+            file.dispose();
+
+            file = load(lazy);
+            assertTrue(file.hasJournalChanges());
+            assertEquals(expected, getRecords(file));
+
+            file.save();
+            assertFalse(itsJournal.exists());
+            file.dispose();
+
+            file = load(lazy);
+            assertFalse(file.hasJournalChanges());
+            assertEquals(expected, getRecords(file));
+            file.dispose();
+        }
+    }
+
+    @Test
+    public void testPartialCommit() throws Exception
+    {
+        PwsFileV3 file = load(false);
+        file.getRecords().next().setField(
+                new PwsStringUnicodeField(PwsFieldTypeV3.TITLE, "first"));
+        assertTrue(file.saveToJournal(MAX_SIZE));
+        Map<String, String> expected = getRecords(file);
+        file.dispose();
+
+        try (FileOutputStream os = new FileOutputStream(itsJournal, true)) {
+            os.write(new byte[] { 0, 0, 0, 32, 1, 2, 3 });
+        }
+
+        file = load(false);
+        assertEquals(expected, getRecords(file));
+        file.getRecords().next().setField(
+                new PwsStringUnicodeField(PwsFieldTypeV3.TITLE, "second"));
+        assertTrue(file.saveToJournal(MAX_SIZE));
+        expected = getRecords(file);
+        file.dispose();
+
+        file = load(false);
+        assertEquals(expected, getRecords(file));
+        file.dispose();
+    }
+
+    @Test
+    public void testFailedCommit() throws Exception
+    {
+        PwsFileV3 file = load(false);
+        Iterator<PwsRecord> iter = file.getRecords();
+        iter.next().setField(
+                new PwsStringUnicodeField(PwsFieldTypeV3.TITLE, "first"));
+        assertTrue(file.saveToJournal(MAX_SIZE));
+
+        // Fail the next commit by replacing the journal with a directory
+        File saved = new File(itsJournal.getPath() + ".saved");
+        assertTrue(itsJournal.renameTo(saved));
+        assertTrue(itsJournal.mkdir());
+        PwsRecord rec = iter.next();
+        rec.setField(new PwsStringUnicodeField(PwsFieldTypeV3.TITLE,
+                                               "second"));
+        try {
+            file.saveToJournal(MAX_SIZE);
+            throw new AssertionError("Saved to directory");
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            assertTrue(itsJournal.delete());
+            assertTrue(saved.renameTo(itsJournal));
+        }
+
+        // The earlier commit is kept with the failed and new changes
+        rec.setField(new PwsPasswdUnicodeField(PwsRecordV3.PASSWORD,
+                                               "third", file));
+        assertTrue(file.saveToJournal(MAX_SIZE));
+        Map<String, String> expected = getRecords(file);
+        file.dispose();
+
+        file = load(false);
+        assertTrue(file.hasJournalChanges());
+        assertEquals(expected, getRecords(file));
+        file.dispose();
+    }
+
+    @Test
+    public void testStaleJournal() throws Exception
+    {
+        PwsFileV3 file = load(false);
+        Map<String, String> orig = getRecords(file);
+        file.getRecords().next().setField(
+                new PwsStringUnicodeField(PwsFieldTypeV3.TITLE, "stale"));
+        assertTrue(file.saveToJournal(MAX_SIZE));
+        byte[] journal = readJournal();
+        file.dispose();
+
+        // A journal for an older version of the file is ignored
+        file = load(false);
+        file.getRecords().next().setField(
+                new PwsStringUnicodeField(PwsFieldTypeV3.TITLE, "saved"));
+        file.save();
+        Map<String, String> saved = getRecords(file);
+        file.dispose();
+        try (FileOutputStream os = new FileOutputStream(itsJournal)) {
+            os.write(journal);
+        }
+
+        file = load(false);
+        assertFalse(file.hasJournalChanges());
+        assertEquals(saved, getRecords(file));
+        assertNotEquals(orig, saved);
+        file.dispose();
+    }
+
+    @Test
+    public void testTamperedJournal() throws Exception
+    {
+        PwsFileV3 file = load(false);
+        Map<String, String> orig = getRecords(file);
+        file.getRecords().next().setField(
+                new PwsStringUnicodeField(PwsFieldTypeV3.TITLE, "tampered"));
+        assertTrue(file.saveToJournal(MAX_SIZE));
+        file.dispose();
+
+        byte[] journal = readJournal();
+        journal[journal.length - 40] ^= 1;
+        try (FileOutputStream os = new FileOutputStream(itsJournal)) {
+            os.write(journal);
+        }
+
+        file = load(false);
+        assertFalse(file.hasJournalChanges());
+        assertEquals(orig, getRecords(file));
+        file.dispose();
+    }
+
+    @Test
+    public void testFullSaveNeeded() throws Exception
+    {
+        PwsFileV3 file = load(false);
+        file.getRecords().next().setField(
+                new PwsStringUnicodeField(PwsFieldTypeV3.TITLE, "change"));
+        assertFalse(file.saveToJournal(0));
+
+        try (Owner<PwsPassword> passwd = PwsPassword.create(PASSWD)) {
+            file.setPassphrase(passwd.pass());
+        }
+        assertFalse(file.saveToJournal(MAX_SIZE));
+        file.dispose();
+
+        file = load(false);
+        file.setReadOnly(true);
+        try {
+            file.saveToJournal(MAX_SIZE);
+            throw new AssertionError("Saved read only file");
+        } catch (IOException e) {
+            // Expected
+        }
+        file.dispose();
+    }
+
+    /**
+     * Load the file
+     */
+    private PwsFileV3 load(boolean lazy) throws Exception
+    {
+        try (Owner<PwsPassword> passwd = PwsPassword.create(PASSWD)) {
+            return (PwsFileV3)PwsFileFactory.loadFile(itsFile.getPath(),
+                                                      passwd.pass(), lazy);
+        }
+    }
+
+    /**
+     * Read the journal file
+     */
+    private byte[] readJournal() throws IOException
+    {
+        byte[] journal = new byte[(int)itsJournal.length()];
+        try (FileInputStream is = new FileInputStream(itsJournal)) {
+            int pos = 0;
+            while (pos < journal.length) {
+                int count = is.read(journal, pos, journal.length - pos);
+                assertTrue(count > 0);
+                pos += count;
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Get the fields of the records in the file by their UUID
+     */
+    private static Map<String, String> getRecords(PwsFileV3 file)
+    {
+        Map<String, String> recs = new TreeMap<>();
+        for (Iterator<PwsRecord> iter = file.getRecords(); iter.hasNext(); ) {
+            PwsRecord rec = iter.next();
+            recs.put(rec.getField(PwsRecordV3.UUID).toString(),
+                     rec.getField(PwsRecordV3.TITLE) + "|" +
+                     rec.getField(PwsRecordV3.PASSWORD) + "|" +
+                     rec.getField(PwsRecordV3.FIDO_KEY_USE_COUNTER));
+        }
+        return recs;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.util;
+
+import org.junit.Test;
+import org.pwsafe.lib.exception.MemoryKeyException;
+import org.pwsafe.lib.file.Owner;
+import org.pwsafe.lib.file.PwsFile;
+import org.pwsafe.lib.file.PwsFileFactory;
+import org.pwsafe.lib.file.PwsPasswdUnicodeField;
+import org.pwsafe.lib.file.PwsPassword;
+import org.pwsafe.lib.file.PwsRecordV3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests for reading sealed passwords from many threads
+ */
+public final class PasswdFieldStressTest
+{
+    private static final int NUM_FIELDS = 200;
+    private static final int NUM_THREADS = 16;
+    private static final int NUM_PASSES = 25;
+
+    @Test
+    public void testConcurrentReads() throws Exception
+    {
+        PwsFile file = PwsFileFactory.newFile();
+        try (Owner<PwsPassword> passwd = PwsPassword.create("stress")) {
+            file.setPassphrase(passwd.pass());
+        }
+
+        final PwsPasswdUnicodeField[] fields =
+                new PwsPasswdUnicodeField[NUM_FIELDS];
+        for (int i = 0; i < NUM_FIELDS; ++i) {
+            fields[i] = new PwsPasswdUnicodeField(PwsRecordV3.PASSWORD,
+                                                  getPasswd(i), file);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < NUM_THREADS; ++t) {
+                final int threadIdx = t;
+                results.add(executor.submit((Callable<Integer>)() -> {
+                    int numReads = 0;
+                    for (int pass = 0; pass < NUM_PASSES; ++pass) {
+                        for (int i = 0; i < NUM_FIELDS; ++i) {
+                            int idx = (i + threadIdx * 7) % NUM_FIELDS;
+                            assertEquals(getPasswd(idx),
+                                         fields[idx].toString());
+                            ++numReads;
+                        }
+                    }
+                    try (Owner<PwsPassword> filePasswd =
+                                 file.getPassphrase()) {
+                        assertTrue(filePasswd.get().equals("stress"));
+                    }
+                    return numReads;
+                }));
+            }
+
+            for (Future<Integer> result: results) {
+                assertEquals(NUM_FIELDS * NUM_PASSES, (int)result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+            file.dispose();
+        }
+    }
+
+    @Test
+    public void testDispose()
+    {
+        PwsFile file = PwsFileFactory.newFile();
+        PwsPasswdUnicodeField field =
+                new PwsPasswdUnicodeField(PwsRecordV3.PASSWORD,
+                                          getPasswd(0), file);
+        assertEquals(getPasswd(0), field.toString());
+
+        // The sealing key is cleared with the file
+        file.dispose();
+        try {
+            field.toString();
+            throw new AssertionError("Unsealed after dispose");
+        } catch (MemoryKeyException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Get the password for a field
+     */
+    private static String getPasswd(int idx)
+    {
+        return "pässwörd-" + idx;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pwsafe.lib.file.Owner;
+import org.pwsafe.lib.file.PwsFieldTypeV3;
+import org.pwsafe.lib.file.PwsFile;
+import org.pwsafe.lib.file.PwsFileFactory;
+import org.pwsafe.lib.file.PwsFileStorage;
+import org.pwsafe.lib.file.PwsPasswdUnicodeField;
+import org.pwsafe.lib.file.PwsPassword;
+import org.pwsafe.lib.file.PwsRecord;
+import org.pwsafe.lib.file.PwsRecordV3;
+import org.pwsafe.lib.file.PwsStringUnicodeField;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for detecting alias and shortcut passwords when loading a file
+ */
+public final class PasswdRefHintTest
+{
+    private static final String PASSWD = "refs";
+    private static final String REF = "0123456789abcdef0123456789ABCDEF";
+
+    private final Map<String, Integer> itsPasswds = new LinkedHashMap<>();
+    private File itsFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        itsPasswds.put("[[" + REF + "]]", PwsRecordV3.PASSWD_REF_ALIAS);
+        itsPasswds.put("[~" + REF + "~]", PwsRecordV3.PASSWD_REF_SHORTCUT);
+        itsPasswds.put("[[" + REF + "~]", PwsRecordV3.PASSWD_REF_NONE);
+        itsPasswds.put("[~" + REF + "]]", PwsRecordV3.PASSWD_REF_NONE);
+        itsPasswds.put("[[" + REF.replace('0', 'g') + "]]",
+                       PwsRecordV3.PASSWD_REF_NONE);
+        itsPasswds.put("[[" + REF.substring(1) + "é]]",
+                       PwsRecordV3.PASSWD_REF_NONE);
+        itsPasswds.put("[[" + REF + "0]]", PwsRecordV3.PASSWD_REF_NONE);
+        itsPasswds.put("[[]]", PwsRecordV3.PASSWD_REF_NONE);
+        itsPasswds.put("password", PwsRecordV3.PASSWD_REF_NONE);
+
+        itsFile = File.createTempFile("refs", ".psafe3");
+        assertTrue(itsFile.delete());
+        PwsFile file = PwsFileFactory.newFile();
+        try (Owner<PwsPassword> passwd = PwsPassword.create(PASSWD)) {
+            file.setPassphrase(passwd.pass());
+        }
+        for (String passwd: itsPasswds.keySet()) {
+            PwsRecord rec = file.newRecord();
+            rec.setField(new PwsStringUnicodeField(PwsFieldTypeV3.TITLE,
+                                                   passwd));
+            rec.setField(new PwsPasswdUnicodeField(PwsRecordV3.PASSWORD,
+                                                   passwd, file));
+            file.add(rec);
+        }
+        file.setStorage(new PwsFileStorage(itsFile.getPath(), null));
+        file.save();
+        file.dispose();
+    }
+
+    @After
+    public void tearDown()
+    {
+        //noinspection ResultOfMethodCallIgnored
+        itsFile.delete();
+    }
+
+    @Test
+    public void testLoad() throws Exception
+    {
+        for (boolean lazy: new boolean[] { false, true }) {
+            PwsFile file = load(lazy);
+            assertEquals(itsPasswds.size(), file.getRecordCount());
+            for (Iterator<PwsRecord> iter = file.getRecords();
+                 iter.hasNext(); ) {
+                PwsRecordV3 rec = (PwsRecordV3)iter.next();
+                String title = rec.getField(PwsRecordV3.TITLE).toString();
+                assertEquals(itsPasswds.get(title),
+                             (Integer)rec.getPasswdRefHint());
+                assertEquals(title,
+                             rec.getField(PwsRecordV3.PASSWORD).toString());
+            }
+            file.dispose();
+        }
+    }
+
+    @Test
+    public void testChange() throws Exception
+    {
+        PwsFile file = load(false);
+        PwsRecordV3 rec = (PwsRecordV3)file.getRecords().next();
+        assertEquals(PwsRecordV3.PASSWD_REF_ALIAS, rec.getPasswdRefHint());
+        rec.setField(new PwsPasswdUnicodeField(PwsRecordV3.PASSWORD,
+                                               "changed", file));
+        assertEquals(PwsRecordV3.PASSWD_REF_UNKNOWN, rec.getPasswdRefHint());
+
+        PwsRecordV3 added = (PwsRecordV3)file.newRecord();
+        assertEquals(PwsRecordV3.PASSWD_REF_UNKNOWN,
+                     added.getPasswdRefHint());
+        file.dispose();
+    }
+
+    /**
+     * Load the file
+     */
+    private PwsFile load(boolean lazy) throws Exception
+    {
+        try (Owner<PwsPassword> passwd = PwsPassword.create(PASSWD)) {
+            return PwsFileFactory.loadFile(itsFile.getPath(), passwd.pass(),
+                                           lazy);
+        }
+    }
+}
@@ -7,11 +7,18 @@
  */
 package net.tjado.passwdsafe.test.util;
 
+import android.util.Log;
+
 import org.junit.Test;
+import org.pwsafe.lib.Util;
 import org.pwsafe.lib.crypto.SHA1;
 import org.pwsafe.lib.crypto.SHA256Pws;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 /**
  * Tests for SHA hashing.  Test values from
@@ -20,6 +27,8 @@ import static org.junit.Assert.assertArrayEquals;
 
 public final class SHATest
 {
+    private static final String TAG = "SHATest";
+
     @Test
     public void testSha1()
     {
@@ -52,6 +61,123 @@ public final class SHATest
                    "6ec162a3d8b2070178bbbc296de29b4e2bf3263c5729b9cb11a4ef7cd36f7915");
     }
 
+    @Test
+    public void testSha256Multi()
+    {
+        for (int numInputs: new int[]{ 0, 1, 3, 4, 5, 9 }) {
+            byte[][] inputs = new byte[numInputs][];
+            for (int i = 0; i < numInputs; ++i) {
+                inputs[i] = new byte[i * 13];
+                Util.newRandBytes(inputs[i]);
+            }
+
+            for (int iter: new int[]{ 0, 1, 1000 }) {
+                byte[][] outputs = SHA256Pws.digestNMultiNative(inputs, iter);
+                assertEquals(numInputs, outputs.length);
+                byte[][] javaOutputs = SHA256Pws.digestNMultiJava(inputs, iter);
+                assertEquals(numInputs, javaOutputs.length);
+                for (int i = 0; i < numInputs; ++i) {
+                    byte[] md = SHA256Pws.digestNJava(inputs[i], iter);
+                    assertArrayEquals(md, outputs[i]);
+                    assertArrayEquals(md, javaOutputs[i]);
+                    assertArrayEquals(md, SHA256Pws.digestNNative(inputs[i],
+                                                                  iter));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSha256MultiTiming()
+    {
+        final int numInputs = 4;
+        final int iter = 100000;
+        byte[][] inputs = new byte[numInputs][];
+        for (int i = 0; i < numInputs; ++i) {
+            inputs[i] = new byte[32];
+            Util.newRandBytes(inputs[i]);
+        }
+
+        long start = System.nanoTime();
+        for (byte[] input: inputs) {
+            SHA256Pws.digestNJava(input, iter);
+        }
+        long javaTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (byte[] input: inputs) {
+            SHA256Pws.digestNNative(input, iter);
+        }
+        long nativeTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        SHA256Pws.digestNMultiNative(inputs, iter);
+        long multiTime = System.nanoTime() - start;
+
+        Log.i(TAG, String.format(
+                "%d inputs, %d iters: Java %d ms, native %d ms, " +
+                "native multi %d ms", numInputs, iter,
+                javaTime / 1000000, nativeTime / 1000000,
+                multiTime / 1000000));
+    }
+
+    @Test
+    public void testSha256Chain() throws NoSuchAlgorithmException
+    {
+        for (int len: new int[]{ 0, 1, 32, 55, 64, 100 }) {
+            byte[] input = new byte[len];
+            Util.newRandBytes(input);
+            for (int iter: new int[]{ 0, 1, 2, 3, 2048 }) {
+                assertArrayEquals(digestNLoop(input, iter),
+                                  SHA256Pws.digestNJava(input, iter));
+            }
+        }
+    }
+
+    @Test
+    public void testSha256ChainTiming() throws NoSuchAlgorithmException
+    {
+        final int iter = 200000;
+        byte[] input = new byte[32];
+        Util.newRandBytes(input);
+
+        for (int run = 0; run < 3; ++run) {
+            long start = System.nanoTime();
+            byte[] loopMd = digestNLoop(input, iter);
+            long loopTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            byte[] javaMd = SHA256Pws.digestNJava(input, iter);
+            long javaTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            byte[] nativeMd = SHA256Pws.digestNNative(input, iter);
+            long nativeTime = System.nanoTime() - start;
+
+            assertArrayEquals(loopMd, javaMd);
+            assertArrayEquals(loopMd, nativeMd);
+            Log.i(TAG, String.format(
+                    "%d iters: MessageDigest loop %d ms, Java chain %d ms, " +
+                    "native %d ms", iter, loopTime / 1000000,
+                    javaTime / 1000000, nativeTime / 1000000));
+        }
+    }
+
+    /**
+     * Hash the input iter+1 times with a MessageDigest, allocating a new
+     * digest for each iteration
+     */
+    private static byte[] digestNLoop(byte[] input, int iter)
+            throws NoSuchAlgorithmException
+    {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] output = digest.digest(input);
+        for (int i = 0; i < iter; ++i) {
+            output = digest.digest(output);
+        }
+        return output;
+    }
+
     private static void sha1Test(String msgstr, String mdstr)
     {
         byte[] msg = TestUtils.hexToBytes(msgstr);
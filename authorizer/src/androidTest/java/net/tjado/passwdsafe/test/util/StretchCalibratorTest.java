@@ -0,0 +1,91 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.util;
+
+import org.junit.Test;
+import org.pwsafe.lib.file.PwsStretchCalibrator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for calibrating the key stretch iterations
+ */
+public final class StretchCalibratorTest
+{
+    private static final long MS = 1000000;
+
+    @Test
+    public void testFirstSample()
+    {
+        // 1024 iterations in 100 ms
+        assertEquals(5120, PwsStretchCalibrator.calibrate(
+                500, new StubClock(100 * MS)));
+    }
+
+    @Test
+    public void testDoublingSamples()
+    {
+        // Samples below an eighth of the target are retried with double the
+        // iterations until 4096 iterations take 70 ms
+        assertEquals(29257, PwsStretchCalibrator.calibrate(
+                500, new StubClock(10 * MS, 10 * MS, 70 * MS)));
+    }
+
+    @Test
+    public void testFastestRepeat()
+    {
+        // The fastest of the repeated final samples is used
+        assertEquals(6400, PwsStretchCalibrator.calibrate(
+                500, new StubClock(100 * MS, 80 * MS, 90 * MS)));
+    }
+
+    @Test
+    public void testMinimum()
+    {
+        assertEquals(PwsStretchCalibrator.MIN_ITER,
+                     PwsStretchCalibrator.calibrate(
+                             500, new StubClock(10000 * MS)));
+    }
+
+    @Test
+    public void testDevice()
+    {
+        int iter = PwsStretchCalibrator.getDeviceIterations();
+        assertTrue(iter >= PwsStretchCalibrator.MIN_ITER);
+        assertTrue(iter <= PwsStretchCalibrator.MAX_ITER);
+        assertEquals(iter, PwsStretchCalibrator.getDeviceIterations());
+    }
+
+    /**
+     * Clock where each timed sample takes the next of a sequence of
+     * durations, with the last duration repeated
+     */
+    private static final class StubClock implements PwsStretchCalibrator.Clock
+    {
+        private final long[] itsDurations;
+        private long itsTime = 0;
+        private int itsNumCalls = 0;
+
+        private StubClock(long... durations)
+        {
+            itsDurations = durations;
+        }
+
+        @Override
+        public long nanoTime()
+        {
+            if ((itsNumCalls++ % 2) == 1) {
+                int sample = itsNumCalls / 2 - 1;
+                itsTime += itsDurations[Math.min(sample,
+                                                 itsDurations.length - 1)];
+            }
+            return itsTime;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.test.util;
+
+import android.os.Debug;
+import android.util.Log;
+
+import org.junit.Test;
+import org.pwsafe.lib.Util;
+import org.pwsafe.lib.crypto.TwofishPws;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests and benchmark for Twofish CBC processing
+ */
+public final class TwofishTest
+{
+    private static final String TAG = "TwofishTest";
+
+    private static final int BENCH_LEN = 1024 * 1024;
+
+    @Test
+    public void testBulkMatchesBlocks()
+    {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[TwofishPws.BLOCK_SIZE];
+        byte[] plain = new byte[TwofishPws.BLOCK_SIZE * 37];
+        Util.newRandBytes(key);
+        Util.newRandBytes(iv);
+        Util.newRandBytes(plain);
+
+        byte[] blockEnc = processBlocks(new TwofishPws(key, true, iv), plain);
+
+        TwofishPws bulk = new TwofishPws(key, true, iv);
+        byte[] bulkEnc = new byte[plain.length];
+        bulk.processCBC(plain, 0, plain.length, bulkEnc, 0);
+        assertArrayEquals(blockEnc, bulkEnc);
+
+        // Decrypt in place split across two calls
+        byte[] dec = bulkEnc.clone();
+        TwofishPws bulkDec = new TwofishPws(key, false, iv);
+        int split = TwofishPws.BLOCK_SIZE * 5;
+        bulkDec.processCBC(dec, 0, split, dec, 0);
+        bulkDec.processCBC(dec, split, dec.length - split, dec, split);
+        assertArrayEquals(plain, dec);
+
+        byte[] blockDec = processBlocks(new TwofishPws(key, false, iv),
+                                        bulkEnc);
+        assertArrayEquals(plain, blockDec);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testBulkBenchmark()
+    {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[TwofishPws.BLOCK_SIZE];
+        byte[] data = new byte[BENCH_LEN];
+        Util.newRandBytes(key);
+        Util.newRandBytes(iv);
+        Util.newRandBytes(data);
+
+        TwofishPws blocks = new TwofishPws(key, false, iv);
+        byte[] block = new byte[TwofishPws.BLOCK_SIZE];
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int pos = 0; pos < data.length; pos += block.length) {
+            System.arraycopy(data, pos, block, 0, block.length);
+            byte[] dec = blocks.processCBC(block);
+            System.arraycopy(dec, 0, block, 0, block.length);
+        }
+        long blocksTime = System.nanoTime() - start;
+        int blocksAllocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        Debug.resetThreadAllocCount();
+
+        TwofishPws bulk = new TwofishPws(key, false, iv);
+        Debug.startAllocCounting();
+        start = System.nanoTime();
+        bulk.processCBC(data, 0, data.length, data, 0);
+        long bulkTime = System.nanoTime() - start;
+        int bulkAllocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        Debug.resetThreadAllocCount();
+
+        Log.i(TAG, String.format(
+                "Per-block: %d ms, %d allocs/MB; bulk: %d ms, %d allocs/MB",
+                blocksTime / 1000000, blocksAllocs,
+                bulkTime / 1000000, bulkAllocs));
+    }
+
+    /**
+     * Process the data one block at a time
+     */
+    private static byte[] processBlocks(TwofishPws cipher, byte[] data)
+    {
+        byte[] out = new byte[data.length];
+        byte[] block = new byte[TwofishPws.BLOCK_SIZE];
+        for (int pos = 0; pos < data.length; pos += block.length) {
+            System.arraycopy(data, pos, block, 0, block.length);
+            byte[] processed = cipher.processCBC(block);
+            System.arraycopy(processed, 0, out, pos, block.length);
+        }
+        return out;
+    }
+}
@@ -11,8 +11,11 @@
 
 #include <jni.h>
 
+#include <algorithm>
+
 #include "org_pwsafe_lib_crypto_SHA256Pws.h"
 #include "sha256.h"
+#include "sha256multi.h"
 #include "Util.h"
 
 /**
@@ -34,11 +37,10 @@
     H0.update(reinterpret_cast<unsigned char *>(pdata), (size_t)plen);
     H0.final(output);
 
-    for (jint i = 0; i < iter; ++i) {
-        SHA256 H;
-        H.update(output.data(), output.size());
-        H.final(output);
-    }
+    std::array<SHA256Multi<1>::Digest, 1> chain{output};
+    SHA256Multi<1>::iterate(chain, static_cast<uint32_t>(iter));
+    output = chain[0];
+    trashMemory(chain.data(), sizeof(chain));
 
     jbyteArray outputArray = env->NewByteArray(output.size());
     env->SetByteArrayRegion(outputArray, 0, output.size(),
@@ -59,5 +61,70 @@ Java_org_pwsafe_lib_crypto_SHA256Pws_digestNNative(JNIEnv* env,
     return outputArray;
 }
 
+/**
+ * Implementation of digestNMultiNative so stack can be cleaned by caller
+ * @param env JNI environment
+ * @param inputs Array of input byte arrays
+ * @param iter Number of iterations
+ * @return Array of the digested bytes for each input
+ */
+[[gnu::noinline]] static jobjectArray digestNMultiNativeImpl(
+        JNIEnv* env, jobjectArray inputs, jint iter)
+{
+    using Multi = SHA256Multi<4>;
+
+    jsize numInputs = env->GetArrayLength(inputs);
+    jclass byteArrayClass = env->FindClass("[B");
+    jobjectArray outputs = env->NewObjectArray(numInputs, byteArrayClass,
+                                               nullptr);
+    if (outputs == nullptr) {
+        return nullptr;
+    }
+
+    std::array<Multi::Digest, Multi::LANES> digests{};
+    for (jsize start = 0; start < numInputs; start += Multi::LANES) {
+        jsize numLanes = std::min(numInputs - start,
+                                  static_cast<jsize>(Multi::LANES));
+        for (jsize l = 0; l < numLanes; ++l) {
+            auto p = static_cast<jbyteArray>(
+                    env->GetObjectArrayElement(inputs, start + l));
+            jsize plen = env->GetArrayLength(p);
+            jbyte *pdata = env->GetByteArrayElements(p, nullptr);
+
+            SHA256 H0;
+            H0.update(reinterpret_cast<unsigned char *>(pdata), (size_t)plen);
+            H0.final(digests[l]);
+
+            env->ReleaseByteArrayElements(p, pdata, 0);
+            env->DeleteLocalRef(p);
+        }
+
+        // Unused lanes hash their previous contents which are ignored
+        Multi::iterate(digests, static_cast<uint32_t>(iter));
+
+        for (jsize l = 0; l < numLanes; ++l) {
+            jbyteArray outputArray = env->NewByteArray(digests[l].size());
+            env->SetByteArrayRegion(
+                    outputArray, 0, digests[l].size(),
+                    reinterpret_cast<jbyte *>(digests[l].data()));
+            env->SetObjectArrayElement(outputs, start + l, outputArray);
+            env->DeleteLocalRef(outputArray);
+        }
+    }
+
+    trashMemory(digests.data(), sizeof(digests));
+    return outputs;
+}
+
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_org_pwsafe_lib_crypto_SHA256Pws_digestNMultiNative(JNIEnv* env,
+                                                        jclass,
+                                                        jobjectArray inputs,
+                                                        jint iter)
+{
+    jobjectArray outputs = digestNMultiNativeImpl(env, inputs, iter);
+    burnStack(sizeof(unsigned long) * 74);
+    return outputs;
+}
 
 #pragma clang diagnostic pop
@@ -0,0 +1,203 @@
+#pragma clang diagnostic push
+#pragma ide diagnostic ignored "readability-magic-numbers"
+#pragma ide diagnostic ignored "cppcoreguidelines-avoid-magic-numbers"
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+// sha256multi.cpp
+// Multi-buffer SHA256 hash chains for key stretching
+//-----------------------------------------------------------------------------
+#include "sha256multi.h"
+#include "Util.h"
+
+static constexpr const std::array<uint32_t, 8> IV{
+        0x6A09E667U, 0xBB67AE85U, 0x3C6EF372U, 0xA54FF53AU,
+        0x510E527FU, 0x9B05688CU, 0x1F83D9ABU, 0x5BE0CD19U};
+
+static constexpr const std::array<uint32_t, 64> K{
+        0x428a2f98U, 0x71374491U, 0xb5c0fbcfU, 0xe9b5dba5U,
+        0x3956c25bU, 0x59f111f1U, 0x923f82a4U, 0xab1c5ed5U,
+        0xd807aa98U, 0x12835b01U, 0x243185beU, 0x550c7dc3U,
+        0x72be5d74U, 0x80deb1feU, 0x9bdc06a7U, 0xc19bf174U,
+        0xe49b69c1U, 0xefbe4786U, 0x0fc19dc6U, 0x240ca1ccU,
+        0x2de92c6fU, 0x4a7484aaU, 0x5cb0a9dcU, 0x76f988daU,
+        0x983e5152U, 0xa831c66dU, 0xb00327c8U, 0xbf597fc7U,
+        0xc6e00bf3U, 0xd5a79147U, 0x06ca6351U, 0x14292967U,
+        0x27b70a85U, 0x2e1b2138U, 0x4d2c6dfcU, 0x53380d13U,
+        0x650a7354U, 0x766a0abbU, 0x81c2c92eU, 0x92722c85U,
+        0xa2bfe8a1U, 0xa81a664bU, 0xc24b8b70U, 0xc76c51a3U,
+        0xd192e819U, 0xd6990624U, 0xf40e3585U, 0x106aa070U,
+        0x19a4c116U, 0x1e376c08U, 0x2748774cU, 0x34b0bcb5U,
+        0x391c0cb3U, 0x4ed8aa4aU, 0x5b9cca4fU, 0x682e6ff3U,
+        0x748f82eeU, 0x78a5636fU, 0x84c87814U, 0x8cc70208U,
+        0x90befffaU, 0xa4506cebU, 0xbef9a3f7U, 0xc67178f2U};
+
+inline static uint32_t load32H(const unsigned char* y)
+{
+    return (static_cast<uint32_t>(y[0]) << 24U) |
+           (static_cast<uint32_t>(y[1]) << 16U) |
+           (static_cast<uint32_t>(y[2]) << 8U) |
+           (static_cast<uint32_t>(y[3]));
+}
+
+inline static void store32H(uint32_t x, unsigned char* y)
+{
+    y[0] = static_cast<unsigned char>((x >> 24U) & 0xffU);
+    y[1] = static_cast<unsigned char>((x >> 16U) & 0xffU);
+    y[2] = static_cast<unsigned char>((x >> 8U) & 0xffU);
+    y[3] = static_cast<unsigned char>(x & 0xffU);
+}
+
+/**
+ * The type of a word with one 32-bit value for each lane.  Multiple lanes use
+ * the GCC and Clang vector extensions so the operations on the lanes are
+ * done with vector instructions.
+ */
+template <size_t Lanes> struct LaneWord;
+
+template <> struct LaneWord<1>
+{
+    using type = uint32_t;
+
+    static uint32_t get(type w, size_t)
+    {
+        return w;
+    }
+
+    static void set(type& w, size_t, uint32_t val)
+    {
+        w = val;
+    }
+};
+
+template <> struct LaneWord<4>
+{
+    using type = uint32_t __attribute__((vector_size(16)));
+
+    static uint32_t get(type w, size_t lane)
+    {
+        return w[lane];
+    }
+
+    static void set(type& w, size_t lane, uint32_t val)
+    {
+        w[lane] = val;
+    }
+};
+
+template <typename Word>
+inline static Word ror(Word x, unsigned int n)
+{
+    return (x >> n) | (x << (32U - n));
+}
+
+template <typename Word>
+inline static Word Sigma0(Word x)
+{
+    return ror(x, 2) ^ ror(x, 13) ^ ror(x, 22);
+}
+
+template <typename Word>
+inline static Word Sigma1(Word x)
+{
+    return ror(x, 6) ^ ror(x, 11) ^ ror(x, 25);
+}
+
+template <typename Word>
+inline static Word Gamma0(Word x)
+{
+    return ror(x, 7) ^ ror(x, 18) ^ (x >> 3U);
+}
+
+template <typename Word>
+inline static Word Gamma1(Word x)
+{
+    return ror(x, 17) ^ ror(x, 19) ^ (x >> 10U);
+}
+
+template <typename Word>
+inline static void RND(Word a, Word b, Word c, Word& d,
+                       Word e, Word f, Word g, Word& h,
+                       Word w, uint32_t ki)
+{
+    Word t0 = h + Sigma1(e) + (g ^ (e & (f ^ g))) + ki + w;
+    Word t1 = Sigma0(a) + (((a | b) & c) | (a & b));
+    d += t0;
+    h = t0 + t1;
+}
+
+/**
+ * Hash the digest in each lane iter more times
+ * @param digests The digests which are replaced by the final digests
+ * @param iter The number of times to hash
+ */
+template <size_t Lanes>
+void SHA256Multi<Lanes>::iterate(std::array<Digest, Lanes>& digests,
+                                 uint32_t iter)
+{
+    using Lane = LaneWord<Lanes>;
+    using Word = typename Lane::type;
+
+    // Hash chain state words for each lane
+    std::array<Word, 8> H{};
+    for (size_t i = 0; i < 8; ++i) {
+        for (size_t l = 0; l < Lanes; ++l) {
+            Lane::set(H[i], l, load32H(digests[l].data() + (4 * i)));
+        }
+    }
+
+    // Message schedule and working variables.  The padding words of the
+    // block for a 256 bit message are constant.
+    std::array<Word, 64> W{};
+    W[8] = Word{} + 0x80000000U;
+    W[15] = Word{} + 256U;
+    std::array<Word, 8> S{};
+
+    for (uint32_t n = 0; n < iter; ++n) {
+        // The block is the previous digest followed by the padding
+        for (size_t i = 0; i < 8; ++i) {
+            W[i] = H[i];
+        }
+        for (size_t i = 16; i < 64; ++i) {
+            W[i] = Gamma1(W[i - 2]) + W[i - 7] + Gamma0(W[i - 15]) + W[i - 16];
+        }
+
+        for (size_t i = 0; i < 8; ++i) {
+            S[i] = Word{} + IV[i];
+        }
+
+        for (size_t r = 0; r < 64; r += 8) {
+            RND(S[0],S[1],S[2],S[3],S[4],S[5],S[6],S[7],W[r + 0],K[r + 0]);
+            RND(S[7],S[0],S[1],S[2],S[3],S[4],S[5],S[6],W[r + 1],K[r + 1]);
+            RND(S[6],S[7],S[0],S[1],S[2],S[3],S[4],S[5],W[r + 2],K[r + 2]);
+            RND(S[5],S[6],S[7],S[0],S[1],S[2],S[3],S[4],W[r + 3],K[r + 3]);
+            RND(S[4],S[5],S[6],S[7],S[0],S[1],S[2],S[3],W[r + 4],K[r + 4]);
+            RND(S[3],S[4],S[5],S[6],S[7],S[0],S[1],S[2],W[r + 5],K[r + 5]);
+            RND(S[2],S[3],S[4],S[5],S[6],S[7],S[0],S[1],W[r + 6],K[r + 6]);
+            RND(S[1],S[2],S[3],S[4],S[5],S[6],S[7],S[0],W[r + 7],K[r + 7]);
+        }
+
+        for (size_t i = 0; i < 8; ++i) {
+            H[i] = S[i] + IV[i];
+        }
+    }
+
+    for (size_t i = 0; i < 8; ++i) {
+        for (size_t l = 0; l < Lanes; ++l) {
+            store32H(Lane::get(H[i], l), digests[l].data() + (4 * i));
+        }
+    }
+
+    trashMemory(H.data(), sizeof(H));
+    trashMemory(W.data(), sizeof(W));
+    trashMemory(S.data(), sizeof(S));
+}
+
+template class SHA256Multi<1>;
+template class SHA256Multi<4>;
+
+#pragma clang diagnostic pop
@@ -0,0 +1,40 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+// sha256multi.h
+// Multi-buffer SHA256 hash chains for key stretching
+//-----------------------------------------------------------------------------
+#ifndef __SHA256MULTI_H
+#define __SHA256MULTI_H
+
+#include <array>
+#include <cstddef>
+#include <cstdint>
+
+#include "sha256.h"
+
+/**
+ * Continues SHA256 hash chains where each step hashes the 32 byte digest of
+ * the previous step.  As the input is always one digest, each step is a
+ * single compression of a block with fixed padding and the chain is kept as
+ * state words without any byte conversions.  The chains of several lanes are
+ * interleaved round by round so the compiler can process the lanes with
+ * vector instructions.
+ */
+template <size_t Lanes>
+class SHA256Multi
+{
+public:
+    static constexpr const size_t LANES = Lanes;
+
+    using Digest = std::array<unsigned char, SHA256::HASHLEN>;
+
+    /// Hash the digest in each lane iter more times
+    static void iterate(std::array<Digest, Lanes>& digests, uint32_t iter);
+};
+
+#endif /* __SHA256MULTI_H */
@@ -64,6 +64,9 @@ public class Preferences
         "fileCloseClearClipboardPref";
     public static final boolean PREF_FILE_CLOSE_CLEAR_CLIPBOARD_DEF = true;
 
+    private static final String PREF_FILE_JOURNAL = "fileJournalPref";
+    private static final boolean PREF_FILE_JOURNAL_DEF = false;
+
     private static final String PREF_FILE_OPEN_YUBIKEY = "fileOpenYubikey";
     private static final boolean PREF_FILE_OPEN_YUBIKEY_DEF = false;
 
@@ -261,6 +264,14 @@ public class Preferences
                                 PREF_FILE_CLOSE_CLEAR_CLIPBOARD_DEF);
     }
 
+    /**
+     * Get the preference to save changes to the journal of a file
+     */
+    public static boolean getFileJournalPref(SharedPreferences prefs)
+    {
+        return prefs.getBoolean(PREF_FILE_JOURNAL, PREF_FILE_JOURNAL_DEF);
+    }
+
     /**
      * Get the preference to use YubiKey
      */
@@ -47,6 +47,12 @@ public class HeaderPasswdPolicies
         {
             ++itsUseCount;
         }
+
+        /** Decrement the number of records referencing this policy */
+        protected void decUseCount()
+        {
+            --itsUseCount;
+        }
     }
 
     private final TreeMap<String, HdrPolicy> itsPolicies = new TreeMap<>();
@@ -66,16 +72,27 @@ public class HeaderPasswdPolicies
             }
         }
         for (PasswdRecord rec: recs) {
-            PasswdPolicy recPolicy = rec.getPasswdPolicy();
-            if ((recPolicy != null) &&
-                (recPolicy.getLocation() ==
-                 PasswdPolicy.Location.RECORD_NAME)) {
-                HeaderPasswdPolicies.HdrPolicy hdrPolicy =
-                    itsPolicies.get(recPolicy.getName());
-                if (hdrPolicy != null) {
-                    hdrPolicy.incUseCount();
-                }
-            }
+            addRecordPolicy(rec.getPasswdPolicy());
+        }
+    }
+
+    /** Count a record's use of a policy */
+    void addRecordPolicy(PasswdPolicy recPolicy)
+    {
+        HeaderPasswdPolicies.HdrPolicy hdrPolicy =
+                getRecordHdrPolicy(recPolicy);
+        if (hdrPolicy != null) {
+            hdrPolicy.incUseCount();
+        }
+    }
+
+    /** Remove the count of a record's use of a policy */
+    void removeRecordPolicy(PasswdPolicy recPolicy)
+    {
+        HeaderPasswdPolicies.HdrPolicy hdrPolicy =
+                getRecordHdrPolicy(recPolicy);
+        if (hdrPolicy != null) {
+            hdrPolicy.decUseCount();
         }
     }
 
@@ -106,6 +123,17 @@ public class HeaderPasswdPolicies
         return itsPolicies.containsKey(name);
     }
 
+    /** Get the header policy named by a record's policy; null if none */
+    private HeaderPasswdPolicies.HdrPolicy getRecordHdrPolicy(
+            PasswdPolicy recPolicy)
+    {
+        if ((recPolicy != null) &&
+            (recPolicy.getLocation() == PasswdPolicy.Location.RECORD_NAME)) {
+            return itsPolicies.get(recPolicy.getName());
+        }
+        return null;
+    }
+
     /** Get the collection of header policies */
     public Collection<HeaderPasswdPolicies.HdrPolicy> getPolicies()
     {
@@ -30,12 +30,16 @@ import org.pwsafe.lib.file.PwsRecord;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
@@ -56,6 +60,10 @@ public class PasswdClientProvider extends ContentProvider
     private final Set<String> itsFiles = new HashSet<>();
     private int itsSearchFlags = 0;
     private MatchComparator itsSearchComp = new MatchComparator(true, false);
+    /** Generation of the latest search suggestions query */
+    private final AtomicInteger itsSuggestionsGen = new AtomicInteger();
+    /** Records scanned by the last finished suggestions search */
+    private SuggestionsScan itsLastSuggestionsScan = null;
 
     static {
         MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
@@ -186,6 +194,8 @@ public class PasswdClientProvider extends ContentProvider
             if (selectionArgs.length != 1) {
                 break;
             }
+            // A new query makes any search still running stale
+            int gen = itsSuggestionsGen.incrementAndGet();
             String query = selectionArgs[0];
             if ((query == null) || (query.length() < 2)) {
                 return null;
@@ -212,7 +222,7 @@ public class PasswdClientProvider extends ContentProvider
             PasswdRecordFilter filter = new PasswdRecordFilter(
                     queryPattern, PasswdRecordFilter.OPTS_NO_GROUP);
             return PasswdSafeFileDataFragment.useOpenFileData(
-                    new SuggestionsUser(filter, limit,
+                    new SuggestionsUser(filter, limit, gen,
                                         comparator, getContext()));
         }
         }
@@ -268,13 +278,43 @@ public class PasswdClientProvider extends ContentProvider
                 Preferences.getSortCaseSensitivePref(prefs));
     }
 
+    /**
+     * Get the records scanned by the last suggestions search if a filter
+     * refines its filter for the file data
+     */
+    @Nullable
+    private synchronized SuggestionsScan getRefinedScan(
+            PasswdRecordFilter filter,
+            PasswdFileData fileData)
+    {
+        SuggestionsScan scan = itsLastSuggestionsScan;
+        if ((scan != null) && (scan.itsFileData.get() == fileData) &&
+            (scan.itsChangeCount == fileData.getChangeCount()) &&
+            filter.refines(scan.itsFilter)) {
+            return scan;
+        }
+        return null;
+    }
+
+    /**
+     * Set the records scanned by the last suggestions search if the search
+     * is the latest
+     */
+    private synchronized void setLastScan(SuggestionsScan scan, int gen)
+    {
+        if (gen == itsSuggestionsGen.get()) {
+            itsLastSuggestionsScan = scan;
+        }
+    }
+
     /**
      * PasswdFileData user for search suggestions
      */
-    private static class SuggestionsUser implements PasswdFileDataUser<Cursor>
+    private class SuggestionsUser implements PasswdFileDataUser<Cursor>
     {
         private final PasswdRecordFilter itsFilter;
         private final int itsLimit;
+        private final int itsGen;
         private final MatchComparator itsComparator;
         private final Context itsContext;
 
@@ -283,11 +323,13 @@ public class PasswdClientProvider extends ContentProvider
          */
         protected SuggestionsUser(PasswdRecordFilter filter,
                                   int limit,
+                                  int gen,
                                   MatchComparator comparator,
                                   Context ctx)
         {
             itsFilter = filter;
             itsLimit = limit;
+            itsGen = gen;
             itsComparator = comparator;
             itsContext = ctx;
         }
@@ -297,7 +339,32 @@ public class PasswdClientProvider extends ContentProvider
         {
             ArrayList<RecordMatch> recs = new ArrayList<>();
             Set<String> groups = new HashSet<>();
-            for (PwsRecord rec: fileData.getRecords()) {
+            List<PwsRecord> fileRecs = fileData.getRecords();
+            RecordSearchIndex index = fileData.getSearchIndex();
+
+            // When refining the last search, only its matched records and
+            // those after where it stopped need to be checked.  Without a
+            // limit, the search stops after the first record.
+            SuggestionsScan prevScan = (itsLimit > 0) ?
+                    getRefinedScan(itsFilter, fileData) : null;
+            int numPrevHits = 0;
+            int scanStart = 0;
+            if (prevScan != null) {
+                numPrevHits = prevScan.itsNumHits;
+                scanStart = prevScan.itsNumScanned;
+            }
+
+            int[] hits = new int[16];
+            int numHits = 0;
+            int numScanned = fileRecs.size();
+            int numToCheck = numPrevHits + (fileRecs.size() - scanStart);
+            for (int i = 0; i < numToCheck; ++i) {
+                if (itsSuggestionsGen.get() != itsGen) {
+                    return null;
+                }
+                int idx = (i < numPrevHits) ? prevScan.itsHits[i] :
+                          (scanStart + i - numPrevHits);
+                PwsRecord rec = fileRecs.get(idx);
                 String match = itsFilter.filterRecord(rec, fileData,
                                                       itsContext);
                 if (match != null) {
@@ -310,10 +377,22 @@ public class PasswdClientProvider extends ContentProvider
                     recs.add(new RecordMatch(matchGroup));
                 }
 
+                if ((match != null) || (matchGroup != null) ||
+                    !index.isIndexed(rec)) {
+                    if (numHits == hits.length) {
+                        hits = Arrays.copyOf(hits, numHits * 2);
+                    }
+                    hits[numHits++] = idx;
+                }
+
                 if (recs.size() >= itsLimit) {
+                    numScanned = idx + 1;
                     break;
                 }
             }
+            setLastScan(new SuggestionsScan(itsFilter, fileData, hits,
+                                            numHits, numScanned),
+                        itsGen);
             Collections.sort(recs, itsComparator);
 
             MatrixCursor cursor = new MatrixCursor(
@@ -339,6 +418,39 @@ public class PasswdClientProvider extends ContentProvider
         }
     }
 
+    /**
+     * The records scanned by a suggestions search.  The records are kept by
+     * their position in the file, which is valid until the file changes.
+     */
+    private static final class SuggestionsScan
+    {
+        private final PasswdRecordFilter itsFilter;
+        private final WeakReference<PasswdFileData> itsFileData;
+        private final long itsChangeCount;
+        /** Positions of the records which matched or must be checked */
+        private final int[] itsHits;
+        private final int itsNumHits;
+        /** Number of records scanned before the search stopped */
+        private final int itsNumScanned;
+
+        /**
+         * Constructor
+         */
+        private SuggestionsScan(PasswdRecordFilter filter,
+                                PasswdFileData fileData,
+                                int[] hits,
+                                int numHits,
+                                int numScanned)
+        {
+            itsFilter = filter;
+            itsFileData = new WeakReference<>(fileData);
+            itsChangeCount = fileData.getChangeCount();
+            itsHits = hits;
+            itsNumHits = numHits;
+            itsNumScanned = numScanned;
+        }
+    }
+
     /**
      * A matched password record
      */
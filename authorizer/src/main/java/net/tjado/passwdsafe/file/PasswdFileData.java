@@ -16,6 +16,7 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import net.tjado.passwdsafe.Preferences;
 import net.tjado.passwdsafe.R;
 import net.tjado.passwdsafe.lib.ActContext;
 import net.tjado.passwdsafe.lib.PasswdSafeUtil;
@@ -57,25 +58,31 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 @SuppressWarnings("SameParameterValue")
 public class PasswdFileData
 {
     private PasswdFileUri itsUri;
     private PwsFile itsPwsFile;
-    private final HashMap<String, PwsRecord> itsRecordsByUUID = new HashMap<>();
+    private final RecordUUIDIndex itsRecordsByUUID = new RecordUUIDIndex();
     private final Map<PwsRecord, PasswdRecord> itsPasswdRecords =
             new IdentityHashMap<>();
     private final ArrayList<PwsRecord> itsRecords = new ArrayList<>();
+    private final Set<PasswdRecord> itsUnresolvedRefs =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean itsHasDuplicateUUIDs = false;
+    private long itsChangeCount = 0;
+    private final RecordSearchIndex itsSearchIndex = new RecordSearchIndex();
     private HeaderPasswdPolicies itsHdrPolicies = new HeaderPasswdPolicies();
     private boolean itsIsUriWritable = false;
     private boolean itsIsYubikey = false;
@@ -85,6 +92,11 @@ public class PasswdFileData
 
     private static final String TAG = "PasswdFileData";
 
+    /**
+     * Size of the journal of a file at which the file is saved in full
+     */
+    private static final long JOURNAL_MAX_SIZE = 256 * 1024;
+
     private static final int FIELD_UNSUPPORTED = -1;
     private static final int FIELD_NOT_PRESENT = -2;
 
@@ -116,6 +128,7 @@ public class PasswdFileData
             itsPwsFile.setReadOnly(true);
         }
         finishOpenFile();
+        saveJournalChanges(context);
     }
 
     public void createNewFile(Owner<PwsPassword>.Param passwd, Context context)
@@ -123,6 +136,7 @@ public class PasswdFileData
     {
         itsPwsFile = itsUri.createNew(passwd, context);
         itsPwsFile.setReadOnly(false);
+        calibrateStretchIterations();
         itsIsUriWritable = true;
         save(context);
         finishOpenFile();
@@ -134,7 +148,19 @@ public class PasswdFileData
     public void save(Context context)
             throws IOException, ConcurrentModificationException
     {
-        doSave(new PasswdFileSaveHelper(context), null, context);
+        PasswdFileSaveHelper saveHelper = new PasswdFileSaveHelper(context);
+        boolean saved;
+        try {
+            saved = saveToJournal(saveHelper, context);
+        } catch (IOException e) {
+            // The file is saved in full instead of failing on its journal
+            Log.e(TAG, "Error saving to journal", e);
+            ((PwsFileV3)itsPwsFile).setJournalFullSave();
+            saved = false;
+        }
+        if (!saved) {
+            doSave(saveHelper, null, context);
+        }
     }
 
     /**
@@ -176,11 +202,42 @@ public class PasswdFileData
         return itsRecordsByUUID.get(uuid);
     }
 
+    /** Get a record by its UUID */
+    public PwsRecord getRecord(UUID uuid)
+    {
+        return itsRecordsByUUID.get(uuid);
+    }
+
+    /**
+     * Get a record by a UUID of 32 hex digits at an offset in a string, as
+     * used in the references of aliases and shortcuts
+     */
+    PwsRecord getRecordByHex(String str, int offset)
+    {
+        return itsRecordsByUUID.getHex(str, offset);
+    }
+
     public PasswdRecord getPasswdRecord(PwsRecord rec)
     {
         return itsPasswdRecords.get(rec);
     }
 
+    /**
+     * Get the count of changes to the records.  The count increases when a
+     * record is added, removed, or edited, and the record's PasswdRecord
+     * takes the new count.
+     */
+    public final long getChangeCount()
+    {
+        return itsChangeCount;
+    }
+
+    /** Get the index of the searched fields of the records */
+    public final RecordSearchIndex getSearchIndex()
+    {
+        return itsSearchIndex;
+    }
+
     /** Get the collection of PasswdRecords in the file */
     public Collection<PasswdRecord> getPasswdRecords()
     {
@@ -200,7 +257,23 @@ public class PasswdFileData
     {
         if (itsPwsFile != null) {
             itsPwsFile.add(rec);
-            indexRecords();
+            itsRecords.add(rec);
+            indexRecordUUID(rec);
+            ++itsChangeCount;
+            indexRecordSearch(rec);
+            PasswdRecord passwdRec = new PasswdRecord(rec, this);
+            itsPasswdRecords.put(rec, passwdRec);
+            indexRecordRef(passwdRec);
+            itsHdrPolicies.addRecordPolicy(passwdRec.getPasswdPolicy());
+
+            // References which weren't found may be to the new record
+            if (!itsUnresolvedRefs.isEmpty()) {
+                for (PasswdRecord unresolved:
+                        new ArrayList<>(itsUnresolvedRefs)) {
+                    unresolved.passwordChanged(this);
+                    indexRecordRef(unresolved);
+                }
+            }
         }
     }
 
@@ -222,6 +295,18 @@ public class PasswdFileData
     public final void changePasswd(Owner<PwsPassword>.Param passwd)
     {
         itsPwsFile.setPassphrase(passwd);
+        calibrateStretchIterations();
+    }
+
+    /**
+     * Calibrate the key stretch iterations of a V3 file for the device when
+     * the file is next saved
+     */
+    private void calibrateStretchIterations()
+    {
+        if (isV3()) {
+            ((PwsFileV3)itsPwsFile).calibrateStretchIterations();
+        }
     }
 
     public final PasswdFileUri getUri()
@@ -394,6 +479,19 @@ public class PasswdFileData
         return getField(rec, PwsRecordV3.PASSWORD);
     }
 
+    /**
+     * Get whether the password of a record may be an alias or shortcut
+     * reference as detected when the file was loaded
+     *
+     * @return One of the PwsRecordV3.PASSWD_REF constants
+     */
+    final int getPasswdRefHint(PwsRecord rec)
+    {
+        return (rec instanceof PwsRecordV3) ?
+               ((PwsRecordV3)rec).getPasswdRefHint() :
+               PwsRecordV3.PASSWD_REF_UNKNOWN;
+    }
+
     public final void setPassword(String oldPasswd, String newPasswd,
                                   PwsRecord rec)
     {
@@ -421,17 +519,9 @@ public class PasswdFileData
         // Update PasswdRecord and indexes if the record exists
         PasswdRecord passwdRec = getPasswdRecord(rec);
         if (passwdRec != null) {
-            PwsRecord oldRef = passwdRec.getRef();
-            if (oldRef != null) {
-                PasswdRecord oldPasswdRec = getPasswdRecord(oldRef);
-                oldPasswdRec.removeRefToRecord(rec);
-            }
+            unindexRecordRef(passwdRec);
             passwdRec.passwordChanged(this);
-            PwsRecord newRef = passwdRec.getRef();
-            if (newRef != null) {
-                PasswdRecord newPasswdRec = getPasswdRecord(newRef);
-                newPasswdRec.addRefToRecord(rec);
-            }
+            indexRecordRef(passwdRec);
         }
     }
 
@@ -825,11 +915,10 @@ public class PasswdFileData
                                        getId(rec.getRecord()));
 
                 setPasswdPolicyImpl(recPolicy, rec.getRecord(), false);
+                rec.passwdPolicyChanged(this);
             }
-            indexRecords();
-        } else {
-            indexPasswdPolicies();
         }
+        indexPasswdPolicies();
     }
 
     /**
@@ -896,9 +985,10 @@ public class PasswdFileData
         if (index) {
             PasswdRecord passwdRec = getPasswdRecord(rec);
             if (passwdRec != null) {
+                itsHdrPolicies.removeRecordPolicy(passwdRec.getPasswdPolicy());
                 passwdRec.passwdPolicyChanged(this);
+                itsHdrPolicies.addRecordPolicy(passwdRec.getPasswdPolicy());
             }
-            indexPasswdPolicies();
         }
     }
 
@@ -1411,11 +1501,26 @@ public class PasswdFileData
 
         if (fieldId != FIELD_UNSUPPORTED) {
             setOrRemoveField(field, fieldId, rec);
-            if (updateModTime && isV3() && itsPasswdRecords.containsKey(rec)) {
+            PasswdRecord passwdRec = itsPasswdRecords.get(rec);
+            if (updateModTime && isV3() && (passwdRec != null)) {
                 int modFieldId = (fieldId == PwsRecordV3.PASSWORD) ?
                         PwsRecordV3.PASSWORD_MOD_TIME : PwsRecordV3.LAST_MOD_TIME;
                 rec.setField(new PwsTimeField(modFieldId, new Date()));
             }
+            if (passwdRec != null) {
+                passwdRec.setChangeCount(++itsChangeCount);
+                switch (fieldId) {
+                case PwsRecordV3.TITLE:
+                case PwsRecordV3.USERNAME:
+                case PwsRecordV3.URL:
+                case PwsRecordV3.EMAIL:
+                case PwsRecordV3.NOTES:
+                case PwsRecordV3.GROUP: {
+                    indexRecordSearch(rec);
+                    break;
+                }
+                }
+            }
         }
     }
 
@@ -1441,45 +1546,138 @@ public class PasswdFileData
         itsRecords.clear();
         itsRecordsByUUID.clear();
         itsPasswdRecords.clear();
+        itsSearchIndex.clear();
+        itsUnresolvedRefs.clear();
+        itsHasDuplicateUUIDs = false;
+        ++itsChangeCount;
         if (itsPwsFile != null) {
             itsRecords.ensureCapacity(itsPwsFile.getRecordCount());
+            itsRecordsByUUID.ensureCapacity(itsPwsFile.getRecordCount());
             Iterator<PwsRecord> recIter = itsPwsFile.getRecords();
             while (recIter.hasNext()) {
                 PwsRecord rec = recIter.next();
-                String uuid = getUUID(rec);
-                if (uuid == null) {
-                    // Add a UUID field for records without one.  The record
-                    // will not be marked as modified unless the user manually
-                    // edits it.
-                    PwsUUIDField uuidField = new PwsUUIDField(
-                            isV2() ? PwsFieldTypeV2.UUID : PwsFieldTypeV3.UUID,
-                            new UUID());
-                    boolean modified = rec.isModified();
-                    rec.setField(uuidField);
-                    if (!modified) {
-                        rec.resetModified();
-                    }
-                    uuid = uuidField.toString();
-                }
-
                 itsRecords.add(rec);
-                itsRecordsByUUID.put(uuid, rec);
+                indexRecordUUID(rec);
+                indexRecordSearch(rec);
             }
         }
         for (PwsRecord rec: itsRecords) {
             itsPasswdRecords.put(rec, new PasswdRecord(rec, this));
         }
         for (PasswdRecord passwdRec: itsPasswdRecords.values()) {
-            PwsRecord ref = passwdRec.getRef();
-            PasswdRecord referencedRecord = itsPasswdRecords.get(ref);
-            if (referencedRecord != null) {
-                referencedRecord.addRefToRecord(passwdRec.getRecord());
-            }
+            indexRecordRef(passwdRec);
         }
 
         indexPasswdPolicies();
     }
 
+    /**
+     * Add a record to the UUID index.  A UUID field is added to a record
+     * without one.
+     */
+    private void indexRecordUUID(PwsRecord rec)
+    {
+        int uuidFieldId = getVersionFieldId(PwsRecordV3.UUID);
+        if (uuidFieldId == FIELD_UNSUPPORTED) {
+            return;
+        }
+
+        PwsField field = doGetField(rec, uuidFieldId);
+        UUID uuid;
+        if (field != null) {
+            if (!(field.getValue() instanceof UUID)) {
+                return;
+            }
+            uuid = (UUID)field.getValue();
+        } else {
+            // Add a UUID field for records without one.  The record will not
+            // be marked as modified unless the user manually edits it.
+            uuid = new UUID();
+            PwsUUIDField uuidField = new PwsUUIDField(
+                    isV2() ? PwsFieldTypeV2.UUID : PwsFieldTypeV3.UUID,
+                    uuid);
+            boolean modified = rec.isModified();
+            rec.setField(uuidField);
+            if (!modified) {
+                rec.resetModified();
+            }
+        }
+        if (itsRecordsByUUID.put(uuid, rec) != null) {
+            itsHasDuplicateUUIDs = true;
+        }
+    }
+
+    /**
+     * Add or update a record in the search index.  The fields are those
+     * matched by a PasswdRecordFilter query.
+     */
+    private void indexRecordSearch(PwsRecord rec)
+    {
+        String notes = getField(rec, PwsRecordV3.NOTES);
+        if (PasswdNotes.isTruncated(notes)) {
+            // Matches may include the message added to truncated notes
+            itsSearchIndex.put(rec, (String[])null);
+            return;
+        }
+        if (notes != null) {
+            notes = notes.replace("\r\n", "\n");
+        }
+        itsSearchIndex.put(rec, getTitle(rec), getUsername(rec),
+                           getURL(rec, UrlStyle.FULL),
+                           getEmail(rec, EmailStyle.FULL), notes,
+                           getGroup(rec));
+    }
+
+    /**
+     * Remove a record from the UUID index
+     */
+    private void unindexRecordUUID(PwsRecord rec)
+    {
+        PwsField field = doGetField(rec, getVersionFieldId(PwsRecordV3.UUID));
+        if ((field != null) && (field.getValue() instanceof UUID)) {
+            UUID uuid = (UUID)field.getValue();
+            if (itsRecordsByUUID.get(uuid) == rec) {
+                itsRecordsByUUID.remove(uuid);
+            }
+        }
+    }
+
+    /**
+     * Add the reference from an alias or shortcut record to the record it
+     * references
+     */
+    private void indexRecordRef(PasswdRecord passwdRec)
+    {
+        PwsRecord ref = passwdRec.getRef();
+        if (ref != null) {
+            PasswdRecord refPasswdRec = getPasswdRecord(ref);
+            if (refPasswdRec != null) {
+                refPasswdRec.addRefToRecord(passwdRec.getRecord());
+            }
+        }
+        if (passwdRec.hasUnresolvedRef()) {
+            itsUnresolvedRefs.add(passwdRec);
+        } else {
+            itsUnresolvedRefs.remove(passwdRec);
+        }
+    }
+
+    /**
+     * Remove the reference from an alias or shortcut record to the record
+     * it references
+     */
+    private void unindexRecordRef(PasswdRecord passwdRec)
+    {
+        PwsRecord ref = passwdRec.getRef();
+        if (ref != null) {
+            PasswdRecord refPasswdRec = getPasswdRecord(ref);
+            if (refPasswdRec != null) {
+                refPasswdRec.removeRefToRecord(passwdRec.getRecord());
+            }
+        }
+        itsUnresolvedRefs.remove(passwdRec);
+    }
+
     /** Index the password policies */
     private void indexPasswdPolicies()
     {
@@ -1490,6 +1688,54 @@ public class PasswdFileData
                                                   hdrPolicies);
     }
 
+    /**
+     * Save the changes to a V3 file to its journal if enabled rather than
+     * saving the whole file
+     *
+     * @return true if saved; false if the file must be saved in full
+     */
+    private boolean saveToJournal(PasswdFileSaveHelper saveHelper,
+                                  Context context)
+            throws IOException, ConcurrentModificationException
+    {
+        if ((itsPwsFile == null) || !isV3() ||
+            !Preferences.getFileJournalPref(
+                    Preferences.getSharedPrefs(context))) {
+            return false;
+        }
+
+        setSaveHdrFields(context);
+        PwsStorage storage = itsPwsFile.getStorage();
+        try {
+            storage.setSaveHelper(saveHelper);
+            if (!((PwsFileV3)itsPwsFile).saveToJournal(JOURNAL_MAX_SIZE)) {
+                return false;
+            }
+        } finally {
+            storage.setSaveHelper(null);
+        }
+        PasswdSafeUtil.dbginfo(TAG, "Saved to journal");
+        notifyObservers(this);
+        return true;
+    }
+
+    /**
+     * Save a writable V3 file in full when it was opened with changes from
+     * its journal so the changes are in the file used by other apps
+     */
+    private void saveJournalChanges(Context context)
+    {
+        if (!isV3() || !isWritable() ||
+            !((PwsFileV3)itsPwsFile).hasJournalChanges()) {
+            return;
+        }
+        try {
+            doSave(new PasswdFileSaveHelper(context), null, context);
+        } catch (IOException | ConcurrentModificationException e) {
+            Log.e(TAG, "Error saving journal changes", e);
+        }
+    }
+
     /**
      * Implementation of saving the file or saving as another file
      */
@@ -1548,25 +1794,29 @@ public class PasswdFileData
             return R.string.record_has_references;
         }
 
-        String recuuid = getUUID(rec);
-        if (recuuid == null) {
-            return R.string.record_not_found;
-        }
-
+        int idx = -1;
         for (int i = 0; i < itsRecords.size(); ++i) {
-            PwsRecord r = itsRecords.get(i);
-            String ruuid = getUUID(r);
-            if (recuuid.equals(ruuid)) {
-                boolean rc = itsPwsFile.removeRecord(i);
-                if (rc) {
-                    indexRecords();
-                } else {
-                    return R.string.record_not_found;
-                }
+            if (itsRecords.get(i) == rec) {
+                idx = i;
                 break;
             }
         }
+        if ((idx < 0) || !itsPwsFile.removeRecord(idx)) {
+            return R.string.record_not_found;
+        }
 
+        itsRecords.remove(idx);
+        ++itsChangeCount;
+        if (itsHasDuplicateUUIDs) {
+            // Another record with the same UUID may need to be indexed
+            indexRecords();
+            return 0;
+        }
+        unindexRecordUUID(rec);
+        itsSearchIndex.remove(rec);
+        itsPasswdRecords.remove(rec);
+        unindexRecordRef(passwdRec);
+        itsHdrPolicies.removeRecordPolicy(passwdRec.getPasswdPolicy());
         return 0;
     }
 
@@ -15,8 +15,11 @@ import android.util.Log;
 import net.tjado.passwdsafe.lib.PasswdSafeUtil;
 import net.tjado.passwdsafe.lib.Utils;
 
+import org.pwsafe.lib.file.PwsFileStorage;
 import org.pwsafe.lib.file.PwsStreamStorage;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,18 +38,39 @@ public class PasswdFileGenProviderStorage extends PwsStreamStorage
         itsUri = uri;
     }
 
-    /** Save the file contents */
+    /**
+     * Save the file contents.  The contents are written to a temporary file
+     * before the provider's file is opened, so an error while writing them
+     * leaves the provider's file unchanged.  Errors from the writer are
+     * thrown to the caller.
+     */
     @Override
-    public boolean save(byte[] data, boolean isV3)
+    public boolean save(SaveWriter writer, boolean isV3) throws IOException
+    {
+        PasswdFileSaveHelper helper = (PasswdFileSaveHelper)getSaveHelper();
+        Context ctx = helper.getContext();
+        File file = File.createTempFile("passwd", ".tmp", ctx.getCacheDir());
+        try {
+            PwsFileStorage.writeFile(file, writer);
+            return copyToProvider(file, helper, ctx);
+        } finally {
+            if (!file.delete()) {
+                Log.e(TAG, "Error deleting " + file);
+            }
+        }
+    }
+
+    /**
+     * Copy the saved file contents to the provider
+     */
+    private boolean copyToProvider(File file, PasswdFileSaveHelper helper,
+                                   Context ctx)
     {
         ParcelFileDescriptor pfd = null;
         FileOutputStream fos = null;
+        FileInputStream fis = null;
         try {
             try {
-                PasswdFileSaveHelper helper =
-                        (PasswdFileSaveHelper)getSaveHelper();
-                Context ctx = helper.getContext();
-
                 helper.createBackup(itsUri, getIdentifier());
 
                 var cr = ctx.getContentResolver();
@@ -74,13 +98,14 @@ public class PasswdFileGenProviderStorage extends PwsStreamStorage
                     Log.w(TAG, "Error truncating file", e);
                 }
 
-                fos.write(data);
+                fis = new FileInputStream(file);
+                Utils.copyStream(fis, fos);
 
                 PasswdSafeUtil.dbginfo(TAG, "GenProviderStorage update %s",
                                        itsUri);
                 return true;
             } finally {
-                Utils.closeStreams(fos, pfd);
+                Utils.closeStreams(fis, fos, pfd);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error saving " + itsUri, e);
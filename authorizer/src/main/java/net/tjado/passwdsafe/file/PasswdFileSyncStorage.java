@@ -41,7 +41,7 @@ public final class PasswdFileSyncStorage extends PwsStreamStorage
     }
 
     @Override
-    public boolean save(byte[] data, boolean isV3)
+    public boolean save(SaveWriter writer, boolean isV3)
     {
         File file = null;
         try {
@@ -52,7 +52,7 @@ public final class PasswdFileSyncStorage extends PwsStreamStorage
             helper.createBackup(itsUri, getIdentifier());
 
             file = File.createTempFile("passwd", ".tmp", ctx.getCacheDir());
-            PwsFileStorage.writeFile(file, data);
+            PwsFileStorage.writeFile(file, writer);
             Uri fileUri = PasswdClientProvider.addFile(file);
 
             ContentResolver cr = ctx.getContentResolver();
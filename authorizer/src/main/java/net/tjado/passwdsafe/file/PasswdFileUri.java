@@ -16,6 +16,7 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Environment;
 import android.provider.OpenableColumns;
+import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.os.EnvironmentCompat;
@@ -191,21 +192,25 @@ public class PasswdFileUri
     }
 
 
-    /** Load the password file */
+    /**
+     * Load the password file.  The secret fields of the records in a V3
+     * file are decoded when first used.
+     */
     public PwsFile load(Owner<PwsPassword>.Param passwd, Context context)
             throws EndOfFileException, InvalidPassphraseException, IOException,
                    UnsupportedFileVersionException
     {
         switch (itsType) {
         case FILE: {
-            return PwsFileFactory.loadFile(itsFile.getAbsolutePath(), passwd);
+            return PwsFileFactory.loadFile(itsFile.getAbsolutePath(), passwd,
+                                           true);
         }
         case SYNC_PROVIDER: {
             ContentResolver cr = context.getContentResolver();
             InputStream is = cr.openInputStream(itsUri);
             String id = getIdentifier(context, false);
             PwsStorage storage = new PasswdFileSyncStorage(itsUri, id, is);
-            return PwsFileFactory.loadFromStorage(storage, passwd);
+            return PwsFileFactory.loadFromStorage(storage, passwd, true);
         }
         case EMAIL:
         case GENERIC_PROVIDER: {
@@ -218,7 +223,7 @@ public class PasswdFileUri
             } else {
                 storage = new PwsStreamStorage(id, is);
             }
-            return PwsFileFactory.loadFromStorage(storage, passwd);
+            return PwsFileFactory.loadFromStorage(storage, passwd, true);
         }
         case BACKUP: {
             if (itsBackupFile == null) {
@@ -228,7 +233,7 @@ public class PasswdFileUri
                     BackupFilesDao.openBackupFile(itsBackupFile, context);
             return PwsFileFactory.loadFromStorage(
                     new PwsStreamStorage(getIdentifier(context, false), is),
-                    passwd);
+                    passwd, true);
         }
         }
         return null;
@@ -353,6 +358,10 @@ public class PasswdFileUri
             if (!itsFile.delete()) {
                 throw new IOException("Could not delete file: " + this);
             }
+            File journal = PwsFileStorage.getJournalFile(itsFile);
+            if (journal.exists() && !journal.delete()) {
+                Log.e(TAG, "Could not delete journal: " + journal);
+            }
             break;
         }
         case SYNC_PROVIDER: {
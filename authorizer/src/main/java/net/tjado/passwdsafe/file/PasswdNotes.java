@@ -30,7 +30,7 @@ public final class PasswdNotes
         if (notes == null) {
             itsNotes = null;
             itsIsTruncated = false;
-        } else if (notes.length() > TRUNCATE_LEN) {
+        } else if (isTruncated(notes)) {
             itsNotes =
                     replaceNl(notes.substring(0, TRUNCATE_LEN)) +
                     ctx.getString(R.string.notes_truncated_msg);
@@ -58,6 +58,14 @@ public final class PasswdNotes
         return itsIsTruncated;
     }
 
+    /**
+     * Get whether notes are too long to be shown in full
+     */
+    static boolean isTruncated(@Nullable String notes)
+    {
+        return (notes != null) && (notes.length() > TRUNCATE_LEN);
+    }
+
     /**
      * Replace carriage-return/newline with just newline
      */
@@ -9,9 +9,9 @@ package net.tjado.passwdsafe.file;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 import org.pwsafe.lib.file.PwsRecord;
+import org.pwsafe.lib.file.PwsRecordV3;
 
 import androidx.annotation.NonNull;
 import android.text.TextUtils;
@@ -33,14 +33,17 @@ public class PasswdRecord
     private final String itsUUID;
     private Type itsType;
     private PwsRecord itsRef;
+    private boolean itsHasUnresolvedRef;
     private final ArrayList<PwsRecord> itsRefsToRecord = new ArrayList<>();
     private PasswdPolicy itsPasswdPolicy;
     private PasswdExpiration itsPasswdExpiry;
+    private long itsChangeCount;
 
     public PasswdRecord(PwsRecord rec, PasswdFileData fileData)
     {
         itsRecord = rec;
         itsUUID = fileData.getUUID(rec);
+        itsChangeCount = fileData.getChangeCount();
         passwordChanged(fileData);
         passwdPolicyChanged(fileData);
         passwdExpiryChanged(fileData);
@@ -67,6 +70,18 @@ public class PasswdRecord
         return itsRef;
     }
 
+    /** Get the file's change count when the record was last changed */
+    public long getChangeCount()
+    {
+        return itsChangeCount;
+    }
+
+    /** Set the file's change count when the record was changed */
+    void setChangeCount(long changeCount)
+    {
+        itsChangeCount = changeCount;
+    }
+
     public void addRefToRecord(PwsRecord ref)
     {
         itsRefsToRecord.add(ref);
@@ -86,17 +101,23 @@ public class PasswdRecord
     {
         PwsRecord ref = null;
         Type type = Type.NORMAL;
-        if (fileData.isV3()) {
+        boolean hasRefForm = false;
+        // The password needs to be unsealed only if it may be a reference
+        if (fileData.isV3() &&
+            (fileData.getPasswdRefHint(itsRecord) !=
+             PwsRecordV3.PASSWD_REF_NONE)) {
             String passwd = fileData.getPassword(itsRecord);
             if (passwd != null) {
                 if (passwd.startsWith(ALIAS_OPEN) &&
                     passwd.endsWith(ALIAS_CLOSE)) {
+                    hasRefForm = (passwd.length() == 36);
                     ref = lookupRef(passwd, fileData);
                     if (ref != null) {
                         type = Type.ALIAS;
                     }
                 } else if (passwd.startsWith(SHORTCUT_OPEN) &&
                            passwd.endsWith(SHORTCUT_CLOSE)) {
+                    hasRefForm = (passwd.length() == 36);
                     ref = lookupRef(passwd, fileData);
                     if (ref != null) {
                         type = Type.SHORTCUT;
@@ -106,6 +127,16 @@ public class PasswdRecord
         }
         itsType = type;
         itsRef = ref;
+        itsHasUnresolvedRef = hasRefForm && (ref == null);
+    }
+
+    /**
+     * Get whether the password has the form of an alias or shortcut but the
+     * record it references was not found
+     */
+    public boolean hasUnresolvedRef()
+    {
+        return itsHasUnresolvedRef;
     }
 
     /**
@@ -223,30 +254,12 @@ public class PasswdRecord
 
     private PwsRecord lookupRef(String passwd, PasswdFileData fileData)
     {
-        PwsRecord ref = null;
-
         // Passwd in the form of [[<uuid>]] or [~<uuid>~]. Check for a real
-        // entry. The <uuid> is a string of hex digits and needs to be converted
-        // to the format used by the UUID class
+        // entry. The <uuid> is a string of hex digits which is looked up
+        // directly without formatting it as a UUID string.
         if (passwd.length() == 36) {
-            StringBuilder sb = new StringBuilder(36 - 4 + 6);
-            sb.append('{');
-            sb.append(passwd, 2, 2 + 8);
-            sb.append('-');
-            sb.append(passwd, 10, 10 + 4);
-            sb.append('-');
-            sb.append(passwd, 14, 14 + 4);
-            sb.append('-');
-            sb.append(passwd, 18, 18 + 4);
-            sb.append('-');
-            sb.append(passwd, 22, 22 + 12);
-            sb.append('}');
-            ref = fileData.getRecord(sb.toString().toLowerCase(Locale.US));
-            for (int i = 0; i < sb.length(); ++i) {
-                sb.setCharAt(i, '\0');
-            }
+            return fileData.getRecordByHex(passwd, 2);
         }
-
-        return ref;
+        return null;
     }
 }
@@ -8,12 +8,14 @@
 package net.tjado.passwdsafe.file;
 
 import java.util.Date;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.pwsafe.lib.file.PwsRecord;
 
 import android.content.Context;
+import androidx.annotation.Nullable;
 
 import net.tjado.passwdsafe.R;
 import net.tjado.passwdsafe.lib.Utils;
@@ -47,6 +49,15 @@ public final class PasswdRecordFilter
     /** Regex to match on various fields */
     private final Pattern itsSearchQuery;
 
+    /**
+     * The query string if the regex matches it literally; null otherwise.
+     * The string narrows the records to match using the search index.
+     */
+    private final String itsLiteralQuery;
+
+    /** Whether the literal query is matched without the regex */
+    private final boolean itsIsPlainMatch;
+
     /** Expiration filter type */
     private final PasswdExpiryFilter itsExpiryFilter;
 
@@ -75,6 +86,17 @@ public final class PasswdRecordFilter
     {
         itsType = Type.QUERY;
         itsSearchQuery = query;
+        int flags = (query != null) ? query.flags() : 0;
+        if ((query != null) && ((flags & Pattern.LITERAL) != 0) &&
+            ((flags & ~(Pattern.LITERAL | Pattern.CASE_INSENSITIVE)) == 0)) {
+            // Case-insensitive matching may be Unicode aware, so only a
+            // case-sensitive query is matched without the regex
+            itsLiteralQuery = query.pattern();
+            itsIsPlainMatch = ((flags & Pattern.CASE_INSENSITIVE) == 0);
+        } else {
+            itsLiteralQuery = null;
+            itsIsPlainMatch = false;
+        }
         itsExpiryFilter = PasswdExpiryFilter.ANY;
         itsExpiryAtMillis = 0;
         itsOptions = opts;
@@ -85,6 +107,8 @@ public final class PasswdRecordFilter
     {
         itsType = Type.EXPIRATION;
         itsSearchQuery = null;
+        itsLiteralQuery = null;
+        itsIsPlainMatch = false;
         itsExpiryFilter = filter;
         itsExpiryAtMillis = itsExpiryFilter.getExpiryFromNow(customDate);
         itsOptions = OPTS_DEFAULT;
@@ -106,6 +130,21 @@ public final class PasswdRecordFilter
         }
     }
 
+    /**
+     * Prepare to filter the records of a file.  The shared state used by
+     * filterRecord is initialized so records can then be filtered from
+     * multiple threads while the file is unchanged.
+     */
+    public void prepareFilter(PasswdFileData fileData, Context ctx)
+    {
+        if (ctx != null) {
+            initMatches(ctx);
+        }
+        if (itsLiteralQuery != null) {
+            fileData.getSearchIndex().findCandidates(itsLiteralQuery);
+        }
+    }
+
     /**
      * Filter a record
      * @return A non-null string if the record matches the filter; null if it
@@ -127,6 +166,9 @@ public final class PasswdRecordFilter
                     QUERY_MATCH_NOTES = ctx.getString(net.tjado.passwdsafe.R.string.notes);
                 }
 
+                if (!isSearchCandidate(rec, fileData)) {
+                    break;
+                }
                 if (filterField(fileData.getTitle(rec))) {
                     queryMatch = QUERY_MATCH_TITLE;
                 } else if (filterField(fileData.getUsername(rec))) {
@@ -236,6 +278,30 @@ public final class PasswdRecordFilter
         return false;
     }
 
+    /**
+     * Does the filter refine another so it only matches records the other
+     * matches.  A literal query containing the other's query matches a
+     * subset of its records.  Records not in the file's search index must
+     * still be checked as their case folding may differ.
+     */
+    public boolean refines(@Nullable PasswdRecordFilter filter)
+    {
+        return (filter != null) &&
+               (itsLiteralQuery != null) && (filter.itsLiteralQuery != null) &&
+               (itsSearchQuery.flags() == filter.itsSearchQuery.flags()) &&
+               (itsOptions == filter.itsOptions) &&
+               itsLiteralQuery.contains(filter.itsLiteralQuery);
+    }
+
+    /**
+     * Does the filter match a record using only the record's own fields.
+     * Otherwise, a change to one record can change whether others match.
+     */
+    public boolean isRecordLocal()
+    {
+        return !hasOptions(OPTS_NO_ALIASSHORT);
+    }
+
     /** Convert the filter to a string */
     public String toString(Context ctx)
     {
@@ -279,10 +345,26 @@ public final class PasswdRecordFilter
         return (itsOptions & opts) != 0;
     }
 
+    /**
+     * Is a record a candidate to match the query according to the file's
+     * search index
+     */
+    private boolean isSearchCandidate(PwsRecord rec, PasswdFileData fileData)
+    {
+        if (itsLiteralQuery == null) {
+            return true;
+        }
+        Set<PwsRecord> candidates =
+                fileData.getSearchIndex().findCandidates(itsLiteralQuery);
+        return (candidates == null) || candidates.contains(rec);
+    }
+
     /** Match a field against the search query */
     private boolean filterField(String field)
     {
-        if (field != null) {
+        if (itsIsPlainMatch) {
+            return (field != null) && field.contains(itsLiteralQuery);
+        } else if (field != null) {
             Matcher m = itsSearchQuery.matcher(field);
             return m.find();
         } else {
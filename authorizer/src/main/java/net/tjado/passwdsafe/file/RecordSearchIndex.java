@@ -0,0 +1,341 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.file;
+
+import androidx.annotation.Nullable;
+
+import org.pwsafe.lib.file.PwsRecord;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index of the three-character substrings of the searched
+ * fields of records.  The index finds the records which may contain a
+ * query string so only they need to be matched against the query.
+ * Characters are indexed case folded, and a substring is keyed by a hash of
+ * its characters, so the candidates found are a superset of the records
+ * which match with or without case sensitivity.  Text with characters
+ * whose case mapping changes its length is not indexed.
+ */
+public final class RecordSearchIndex
+{
+    /** Number of characters in an indexed substring */
+    public static final int GRAM_LENGTH = 3;
+
+    private static final int HASH_MULT = 65599;
+
+    private final Map<PwsRecord, Entry> itsEntries = new IdentityHashMap<>();
+    private final HashMap<Integer, Posting> itsPostings = new HashMap<>();
+    private final Set<PwsRecord> itsUnindexed =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+    private Entry[] itsEntriesById = new Entry[16];
+    private int[] itsFreeIds = new int[16];
+    private int itsNumFreeIds = 0;
+    private int itsNextId = 0;
+    /** The string of the last candidates found; null if none cached */
+    private String itsLastQuery;
+    private Set<PwsRecord> itsLastCandidates;
+
+    /**
+     * Get the number of records in the index
+     */
+    public int size()
+    {
+        return itsEntries.size();
+    }
+
+    /**
+     * Remove all of the records from the index
+     */
+    public void clear()
+    {
+        itsEntries.clear();
+        itsPostings.clear();
+        itsUnindexed.clear();
+        itsEntriesById = new Entry[16];
+        itsNumFreeIds = 0;
+        itsNextId = 0;
+        itsLastQuery = null;
+        itsLastCandidates = null;
+    }
+
+    /**
+     * Add or replace the searched fields of a record
+     *
+     * @param fields The fields; null if the record can't be indexed and
+     *               must always be a candidate
+     */
+    public void put(PwsRecord rec, @Nullable String... fields)
+    {
+        remove(rec);
+        itsLastQuery = null;
+        itsLastCandidates = null;
+        Entry entry = new Entry(rec, allocId());
+        itsEntries.put(rec, entry);
+        itsEntriesById[entry.itsId] = entry;
+        entry.itsGrams = (fields != null) ? getGrams(fields) : null;
+        if (entry.itsGrams == null) {
+            itsUnindexed.add(rec);
+            return;
+        }
+
+        for (int gram: entry.itsGrams) {
+            Posting posting = itsPostings.get(gram);
+            if (posting == null) {
+                posting = new Posting();
+                itsPostings.put(gram, posting);
+            }
+            posting.add(entry.itsId);
+        }
+    }
+
+    /**
+     * Remove a record from the index
+     */
+    public void remove(PwsRecord rec)
+    {
+        Entry entry = itsEntries.remove(rec);
+        if (entry == null) {
+            return;
+        }
+        itsLastQuery = null;
+        itsLastCandidates = null;
+        if (entry.itsGrams != null) {
+            for (int gram: entry.itsGrams) {
+                Posting posting = itsPostings.get(gram);
+                if ((posting != null) && posting.remove(entry.itsId) &&
+                    (posting.itsSize == 0)) {
+                    itsPostings.remove(gram);
+                }
+            }
+        } else {
+            itsUnindexed.remove(rec);
+        }
+        itsEntriesById[entry.itsId] = null;
+        freeId(entry.itsId);
+    }
+
+    /**
+     * Get whether a record's fields are in the index.  A record which isn't
+     * is a candidate for every string.
+     */
+    public boolean isIndexed(PwsRecord rec)
+    {
+        Entry entry = itsEntries.get(rec);
+        return (entry != null) && (entry.itsGrams != null);
+    }
+
+    /**
+     * Find the records whose fields may contain a string.  The candidates
+     * for the last string are kept until the index changes.
+     *
+     * @return The candidate records; null if the string can't narrow the
+     * records
+     */
+    @Nullable
+    public Set<PwsRecord> findCandidates(String str)
+    {
+        if (!str.equals(itsLastQuery)) {
+            itsLastCandidates = doFindCandidates(str);
+            itsLastQuery = str;
+        }
+        return itsLastCandidates;
+    }
+
+    /**
+     * Find the records whose fields may contain a string
+     */
+    @Nullable
+    private Set<PwsRecord> doFindCandidates(String str)
+    {
+        int[] grams = getGrams(str);
+        if ((grams == null) || (grams.length == 0)) {
+            return null;
+        }
+
+        Posting rarest = null;
+        for (int gram: grams) {
+            Posting posting = itsPostings.get(gram);
+            if (posting == null) {
+                rarest = null;
+                break;
+            }
+            if ((rarest == null) || (posting.itsSize < rarest.itsSize)) {
+                rarest = posting;
+            }
+        }
+
+        Set<PwsRecord> candidates =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        if (rarest != null) {
+            for (int i = 0; i < rarest.itsSize; ++i) {
+                Entry entry = itsEntriesById[rarest.itsIds[i]];
+                if (entry.hasGrams(grams)) {
+                    candidates.add(entry.itsRecord);
+                }
+            }
+        }
+        candidates.addAll(itsUnindexed);
+        return Collections.unmodifiableSet(candidates);
+    }
+
+    /**
+     * Get the sorted, distinct substring keys of strings
+     *
+     * @return The keys; null if the strings can't be indexed
+     */
+    @Nullable
+    private static int[] getGrams(String... strs)
+    {
+        int num = 0;
+        for (String str: strs) {
+            if ((str != null) && (str.length() >= GRAM_LENGTH)) {
+                num += str.length() - GRAM_LENGTH + 1;
+            }
+        }
+
+        int[] grams = new int[num];
+        int pos = 0;
+        for (String str: strs) {
+            if (str == null) {
+                continue;
+            }
+            int c0 = 0;
+            int c1 = 0;
+            for (int i = 0; i < str.length(); ++i) {
+                int c2 = fold(str.charAt(i));
+                if (c2 < 0) {
+                    return null;
+                }
+                if (i >= (GRAM_LENGTH - 1)) {
+                    grams[pos++] = (c0 * HASH_MULT + c1) * HASH_MULT + c2;
+                }
+                c0 = c1;
+                c1 = c2;
+            }
+        }
+
+        Arrays.sort(grams);
+        int numDistinct = 0;
+        for (int i = 0; i < grams.length; ++i) {
+            if ((i == 0) || (grams[i] != grams[i - 1])) {
+                grams[numDistinct++] = grams[i];
+            }
+        }
+        return (numDistinct == grams.length) ?
+               grams : Arrays.copyOf(grams, numDistinct);
+    }
+
+    /**
+     * Fold the case of a character
+     *
+     * @return The folded character; -1 if its case mapping may be more than
+     * one character, such as for a sharp s
+     */
+    private static int fold(char c)
+    {
+        if (c < 0x80) {
+            return ((c >= 'A') && (c <= 'Z')) ? (c + ('a' - 'A')) : c;
+        }
+        char upper = Character.toUpperCase(c);
+        if ((upper == c) && Character.isLowerCase(c)) {
+            return -1;
+        }
+        return Character.toLowerCase(upper);
+    }
+
+    /**
+     * Allocate an id for an entry
+     */
+    private int allocId()
+    {
+        if (itsNumFreeIds > 0) {
+            return itsFreeIds[--itsNumFreeIds];
+        }
+        int id = itsNextId++;
+        if (id == itsEntriesById.length) {
+            itsEntriesById = Arrays.copyOf(itsEntriesById, id * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Free the id of a removed entry
+     */
+    private void freeId(int id)
+    {
+        if (itsNumFreeIds == itsFreeIds.length) {
+            itsFreeIds = Arrays.copyOf(itsFreeIds, itsNumFreeIds * 2);
+        }
+        itsFreeIds[itsNumFreeIds++] = id;
+    }
+
+    /**
+     * An indexed record
+     */
+    private static final class Entry
+    {
+        private final PwsRecord itsRecord;
+        private final int itsId;
+        /** The sorted substring keys; null if not indexed */
+        private int[] itsGrams;
+
+        /** Constructor */
+        private Entry(PwsRecord rec, int id)
+        {
+            itsRecord = rec;
+            itsId = id;
+        }
+
+        /** Does the entry have all of the substring keys */
+        private boolean hasGrams(int[] grams)
+        {
+            for (int gram: grams) {
+                if (Arrays.binarySearch(itsGrams, gram) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The ids of the entries with a substring key
+     */
+    private static final class Posting
+    {
+        private int[] itsIds = new int[4];
+        private int itsSize = 0;
+
+        /** Add an id */
+        private void add(int id)
+        {
+            if (itsSize == itsIds.length) {
+                itsIds = Arrays.copyOf(itsIds, itsSize * 2);
+            }
+            itsIds[itsSize++] = id;
+        }
+
+        /** Remove an id */
+        private boolean remove(int id)
+        {
+            for (int i = 0; i < itsSize; ++i) {
+                if (itsIds[i] == id) {
+                    itsIds[i] = itsIds[--itsSize];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
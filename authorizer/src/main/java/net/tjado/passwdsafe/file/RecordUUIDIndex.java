@@ -0,0 +1,298 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package net.tjado.passwdsafe.file;
+
+import androidx.annotation.Nullable;
+
+import org.pwsafe.lib.UUID;
+import org.pwsafe.lib.file.PwsRecord;
+
+import java.util.Arrays;
+
+/**
+ * An index of records by their UUID.  The index is an open-addressing hash
+ * table keyed by the two longs of the 128-bit UUID, so a lookup neither
+ * formats nor allocates strings.  Lookups by the string form of a UUID,
+ * {01234567-89ab-cdef-0123-456789abcdef}, parse the string directly.
+ */
+public final class RecordUUIDIndex
+{
+    private static final int MIN_CAPACITY = 16;
+    private static final int UUID_STR_LENGTH = 38;
+    private static final int UUID_HEX_LENGTH = 32;
+
+    private long[] itsHighs;
+    private long[] itsLows;
+    private PwsRecord[] itsRecords;
+    private int itsSize = 0;
+
+    /**
+     * Constructor
+     */
+    public RecordUUIDIndex()
+    {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Get the number of records in the index
+     */
+    public int size()
+    {
+        return itsSize;
+    }
+
+    /**
+     * Remove all of the records from the index
+     */
+    public void clear()
+    {
+        if (itsRecords.length > MIN_CAPACITY) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(itsRecords, null);
+        }
+        itsSize = 0;
+    }
+
+    /**
+     * Ensure the index can hold a number of records without resizing
+     */
+    public void ensureCapacity(int size)
+    {
+        int capacity = capacityFor(size);
+        if (capacity > itsRecords.length) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Add a record to the index
+     *
+     * @return The record previously indexed with the UUID; null if none
+     */
+    @Nullable
+    public PwsRecord put(UUID uuid, PwsRecord rec)
+    {
+        if (capacityFor(itsSize + 1) > itsRecords.length) {
+            rehash(itsRecords.length * 2);
+        }
+        long high = uuid.getHigh();
+        long low = uuid.getLow();
+        int pos = find(high, low);
+        PwsRecord prev = itsRecords[pos];
+        if (prev == null) {
+            itsHighs[pos] = high;
+            itsLows[pos] = low;
+            ++itsSize;
+        }
+        itsRecords[pos] = rec;
+        return prev;
+    }
+
+    /**
+     * Remove a record from the index
+     *
+     * @return The removed record; null if none was indexed with the UUID
+     */
+    @Nullable
+    public PwsRecord remove(UUID uuid)
+    {
+        int pos = find(uuid.getHigh(), uuid.getLow());
+        PwsRecord prev = itsRecords[pos];
+        if (prev == null) {
+            return null;
+        }
+        --itsSize;
+
+        // Shift back the following entries in the probe sequence so no
+        // lookup stops early at the emptied slot
+        int mask = itsRecords.length - 1;
+        int empty = pos;
+        for (int i = (empty + 1) & mask; itsRecords[i] != null;
+             i = (i + 1) & mask) {
+            int home = hash(itsHighs[i], itsLows[i]) & mask;
+            if (((i - home) & mask) >= ((i - empty) & mask)) {
+                itsHighs[empty] = itsHighs[i];
+                itsLows[empty] = itsLows[i];
+                itsRecords[empty] = itsRecords[i];
+                empty = i;
+            }
+        }
+        itsRecords[empty] = null;
+        return prev;
+    }
+
+    /**
+     * Get a record by its UUID
+     */
+    @Nullable
+    public PwsRecord get(UUID uuid)
+    {
+        return get(uuid.getHigh(), uuid.getLow());
+    }
+
+    /**
+     * Get a record by the string form of its UUID
+     *
+     * @return The record; null if not found or the string is not a UUID
+     */
+    @Nullable
+    public PwsRecord get(@Nullable String uuid)
+    {
+        if ((uuid == null) || (uuid.length() != UUID_STR_LENGTH) ||
+            (uuid.charAt(0) != '{') ||
+            (uuid.charAt(UUID_STR_LENGTH - 1) != '}')) {
+            return null;
+        }
+
+        // Digits of each long with the dashes in between skipped
+        long high = 0;
+        long low = 0;
+        int numDigits = 0;
+        for (int i = 1; i < (UUID_STR_LENGTH - 1); ++i) {
+            char c = uuid.charAt(i);
+            if ((i == 9) || (i == 14) || (i == 19) || (i == 24)) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+            int digit = hexDigit(c);
+            if (digit < 0) {
+                return null;
+            }
+            if (numDigits++ < (UUID_HEX_LENGTH / 2)) {
+                high = (high << 4) | digit;
+            } else {
+                low = (low << 4) | digit;
+            }
+        }
+        return get(high, low);
+    }
+
+    /**
+     * Get a record by a UUID of 32 hex digits, without separators, at an
+     * offset in a string
+     *
+     * @return The record; null if not found or the digits are not valid
+     */
+    @Nullable
+    public PwsRecord getHex(CharSequence str, int offset)
+    {
+        if ((offset < 0) || ((str.length() - offset) < UUID_HEX_LENGTH)) {
+            return null;
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < UUID_HEX_LENGTH; ++i) {
+            int digit = hexDigit(str.charAt(offset + i));
+            if (digit < 0) {
+                return null;
+            }
+            if (i < (UUID_HEX_LENGTH / 2)) {
+                high = (high << 4) | digit;
+            } else {
+                low = (low << 4) | digit;
+            }
+        }
+        return get(high, low);
+    }
+
+    /**
+     * Get a record by the two longs of its UUID
+     */
+    @Nullable
+    private PwsRecord get(long high, long low)
+    {
+        return itsRecords[find(high, low)];
+    }
+
+    /**
+     * Find the slot for a UUID; either the slot holding the UUID or the
+     * empty slot where it would be added
+     */
+    private int find(long high, long low)
+    {
+        int mask = itsRecords.length - 1;
+        int pos = hash(high, low) & mask;
+        while ((itsRecords[pos] != null) &&
+               ((itsHighs[pos] != high) || (itsLows[pos] != low))) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    /**
+     * Resize the index to a capacity and re-add its records
+     */
+    private void rehash(int capacity)
+    {
+        long[] highs = itsHighs;
+        long[] lows = itsLows;
+        PwsRecord[] recs = itsRecords;
+        allocate(capacity);
+        for (int i = 0; i < recs.length; ++i) {
+            if (recs[i] != null) {
+                int pos = find(highs[i], lows[i]);
+                itsHighs[pos] = highs[i];
+                itsLows[pos] = lows[i];
+                itsRecords[pos] = recs[i];
+            }
+        }
+    }
+
+    /**
+     * Allocate the slots of the index
+     */
+    private void allocate(int capacity)
+    {
+        itsHighs = new long[capacity];
+        itsLows = new long[capacity];
+        itsRecords = new PwsRecord[capacity];
+    }
+
+    /**
+     * Get the power-of-two capacity which keeps the index at most half full
+     * for a number of records
+     */
+    private static int capacityFor(int size)
+    {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (size * 2)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Get the value of an ASCII hex digit; -1 if not a hex digit
+     */
+    private static int hexDigit(char c)
+    {
+        if ((c >= '0') && (c <= '9')) {
+            return c - '0';
+        } else if ((c >= 'a') && (c <= 'f')) {
+            return c - 'a' + 10;
+        } else if ((c >= 'A') && (c <= 'F')) {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Hash a UUID.  Parts of a UUID are time based, so the bits are mixed
+     * to spread them over the slots.
+     */
+    private static int hash(long high, long low)
+    {
+        long h = high * 0x9e3779b97f4a7c15L + low;
+        h = (h ^ (h >>> 32)) * 0xd6e8feb86659fd93L;
+        return (int)(h ^ (h >>> 32));
+    }
+}
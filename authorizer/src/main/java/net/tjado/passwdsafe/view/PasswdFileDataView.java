@@ -22,6 +22,7 @@ import net.tjado.passwdsafe.file.PasswdExpiration;
 import net.tjado.passwdsafe.file.PasswdFileData;
 import net.tjado.passwdsafe.file.PasswdRecord;
 import net.tjado.passwdsafe.file.PasswdRecordFilter;
+import net.tjado.passwdsafe.file.RecordSearchIndex;
 import net.tjado.passwdsafe.lib.ActContext;
 import net.tjado.passwdsafe.lib.PasswdSafeUtil;
 import net.tjado.passwdsafe.pref.PasswdExpiryNotifPref;
@@ -29,12 +30,18 @@ import net.tjado.passwdsafe.pref.PasswdExpiryNotifPref;
 import org.pwsafe.lib.file.PwsRecord;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -71,6 +78,25 @@ public final class PasswdFileDataView
     private int itsFolderIcon;
     private int itsRecordIcon;
 
+    /** State from which the group tree was built */
+    private PasswdFileData itsViewFileData;
+    private PasswdRecordDisplayOptions itsViewRecordOptions;
+    private PasswdRecordFilter itsViewFilter;
+    private long itsViewChangeCount = -1;
+    private int itsViewGeneration = 0;
+    private Comparator<String> itsGroupComp;
+    private final Map<PwsRecord, RecordEntry> itsRecordEntries =
+            new IdentityHashMap<>();
+    private final Map<String, String[]> itsGroupPaths = new HashMap<>();
+    private final Map<String, String> itsGroupNames = new HashMap<>();
+
+    /**
+     * Minimum number of records matched or listed by a parallel task
+     */
+    private static final int MIN_TASK_RECORDS = 512;
+
+    private static ForkJoinPool itsMatchPool;
+
     private static final String TAG = "PasswdFileDataView";
 
     /**
@@ -78,7 +104,7 @@ public final class PasswdFileDataView
      */
     public PasswdFileDataView()
     {
-        itsRootNode = new GroupNode();
+        itsRootNode = new GroupNode(null, null);
     }
 
     /**
@@ -236,17 +262,29 @@ public final class PasswdFileDataView
             }
         }
 
-        if (incRecords) {
-            List<MatchPwsRecord> entryRecs = itsCurrGroupNode.getRecords();
-            if (entryRecs != null) {
-                for (MatchPwsRecord rec: entryRecs) {
-                    records.add(createListData(rec));
-                }
-            }
-        }
-
         PasswdRecordListDataComparator comp =
                 new PasswdRecordListDataComparator(itsRecordOptions);
+        List<MatchPwsRecord> entryRecs =
+                incRecords ? itsCurrGroupNode.getRecords() : null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if ((entryRecs != null) && (parallelism > 1) &&
+            (entryRecs.size() > MIN_TASK_RECORDS)) {
+            // Create and sort the record items in parallel, and merge them
+            // with the sorted groups
+            int numRecs = entryRecs.size();
+            ListTask task = new ListTask(
+                    entryRecs, new PasswdRecordListData[numRecs],
+                    new PasswdRecordListData[numRecs], comp, 0, numRecs);
+            getMatchPool(parallelism).invoke(task);
+            Collections.sort(records, comp);
+            return mergeSorted(records, task.itsData, comp);
+        }
+
+        if (entryRecs != null) {
+            for (MatchPwsRecord rec: entryRecs) {
+                records.add(createListData(rec));
+            }
+        }
 
         Collections.sort(records, comp);
         return records;
@@ -268,17 +306,14 @@ public final class PasswdFileDataView
      * Does the data view show the given group
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-    public boolean hasGroup(String group)
+    public synchronized boolean hasGroup(String group)
     {
         if (TextUtils.isEmpty(group)) {
             return true;
         }
 
-        ArrayList<String> groups = new ArrayList<>();
-        PasswdFileData.splitGroup(group, groups);
-
         GroupNode node = itsRootNode;
-        for (String checkGroup: groups) {
+        for (String checkGroup: getGroupPath(group)) {
             GroupNode childNode = node.getGroup(checkGroup);
             if (childNode == null) {
                 return false;
@@ -405,59 +440,33 @@ public final class PasswdFileDataView
     }
 
     /**
-     * Rebuild the view information
+     * Rebuild the view information.  The group tree is updated in place for
+     * the records added, removed, or changed since it was built, and for a
+     * filter which refines the previous one.  It is built again when the
+     * file, display options, or filter otherwise change.
      */
     private synchronized void rebuildView(PasswdFileData fileData)
     {
-        itsRootNode = new GroupNode();
         itsNumExpired = 0;
+        if ((fileData == null) ||
+            (fileData != itsViewFileData) ||
+            (itsRecordOptions != itsViewRecordOptions) ||
+            ((itsFilter != null) && !itsFilter.isRecordLocal())) {
+            resetView(fileData);
+        } else if (itsFilter != itsViewFilter) {
+            if ((itsFilter != null) && itsFilter.refines(itsViewFilter)) {
+                refineView(fileData);
+            } else {
+                resetView(fileData);
+            }
+        }
         if (fileData == null) {
             updateCurrentGroup();
             return;
         }
 
-        List<PwsRecord> records = fileData.getRecords();
-        if (itsRecordOptions.itsIsGroupRecords) {
-            Comparator<String> groupComp =
-                    itsRecordOptions.itsIsSortCaseSensitive ?
-                            new StringComparator() : String.CASE_INSENSITIVE_ORDER;
-
-            if (!itsRecordOptions.itsIsSortAscending) {
-                final Comparator<String> comp = groupComp;
-                groupComp = (s1, s2) -> -comp.compare(s1, s2);
-            }
-
-            for (PwsRecord rec: records) {
-                String match = filterRecord(rec, fileData);
-                if (match == null) {
-                    continue;
-                }
-
-                String group = fileData.getGroup(rec);
-                if (group == null) {
-                    group = "";
-                }
-                ArrayList<String> groups = new ArrayList<>();
-                PasswdFileData.splitGroup(group, groups);
-                GroupNode node = itsRootNode;
-                for (String g : groups) {
-                    GroupNode groupNode = node.getGroup(g);
-                    if (groupNode == null) {
-                        groupNode = new GroupNode();
-                        node.putGroup(g, groupNode, groupComp);
-                    }
-                    node = groupNode;
-                }
-                node.addRecord(new MatchPwsRecord(rec, fileData, match));
-             }
-        } else {
-            for (PwsRecord rec: records) {
-                String match = filterRecord(rec, fileData);
-                if (match != null) {
-                    itsRootNode.addRecord(
-                            new MatchPwsRecord(rec, fileData, match));
-                }
-            }
+        if (fileData.getChangeCount() != itsViewChangeCount) {
+            updateView(fileData);
         }
         updateCurrentGroup();
 
@@ -474,6 +483,199 @@ public final class PasswdFileDataView
         }
     }
 
+    /**
+     * Reset the group tree so it is built again for the file data
+     */
+    private void resetView(PasswdFileData fileData)
+    {
+        itsRootNode = new GroupNode(null, null);
+        itsRecordEntries.clear();
+        if (fileData != itsViewFileData) {
+            itsGroupPaths.clear();
+            itsGroupNames.clear();
+        }
+        itsViewFileData = fileData;
+        itsViewRecordOptions = itsRecordOptions;
+        itsViewFilter = itsFilter;
+        itsViewChangeCount = -1;
+
+        Comparator<String> groupComp =
+                itsRecordOptions.itsIsSortCaseSensitive ?
+                        new StringComparator() : String.CASE_INSENSITIVE_ORDER;
+        if (!itsRecordOptions.itsIsSortAscending) {
+            final Comparator<String> comp = groupComp;
+            groupComp = (s1, s2) -> -comp.compare(s1, s2);
+        }
+        itsGroupComp = groupComp;
+    }
+
+    /**
+     * Update the group tree for a filter which refines the one it was built
+     * with.  Only the records matched by the previous filter, and those not
+     * in the search index, can match.
+     */
+    private void refineView(PasswdFileData fileData)
+    {
+        RecordSearchIndex index = fileData.getSearchIndex();
+        ArrayList<PwsRecord> placeRecs = new ArrayList<>();
+        ArrayList<RecordEntry> placeEntries = new ArrayList<>();
+        for (Map.Entry<PwsRecord, RecordEntry> mapEntry:
+                itsRecordEntries.entrySet()) {
+            PwsRecord rec = mapEntry.getKey();
+            RecordEntry entry = mapEntry.getValue();
+            if ((entry.itsNode != null) || !index.isIndexed(rec)) {
+                unplaceRecord(entry);
+                placeRecs.add(rec);
+                placeEntries.add(entry);
+            }
+        }
+        placeRecords(placeRecs, placeEntries, fileData);
+        itsViewFilter = itsFilter;
+    }
+
+    /**
+     * Update the group tree for the records added, removed, or changed since
+     * it was last updated
+     */
+    private void updateView(PasswdFileData fileData)
+    {
+        int generation = ++itsViewGeneration;
+        int numPrevEntries = itsRecordEntries.size();
+        int numPrevSeen = 0;
+        ArrayList<PwsRecord> placeRecs = new ArrayList<>();
+        ArrayList<RecordEntry> placeEntries = new ArrayList<>();
+        for (PwsRecord rec: fileData.getRecords()) {
+            PasswdRecord passwdRec = fileData.getPasswdRecord(rec);
+            long changeCount =
+                    (passwdRec != null) ? passwdRec.getChangeCount() : 0;
+            RecordEntry entry = itsRecordEntries.get(rec);
+            if (entry == null) {
+                entry = new RecordEntry();
+                itsRecordEntries.put(rec, entry);
+                placeRecs.add(rec);
+                placeEntries.add(entry);
+            } else {
+                ++numPrevSeen;
+                if (entry.itsChangeCount != changeCount) {
+                    unplaceRecord(entry);
+                    placeRecs.add(rec);
+                    placeEntries.add(entry);
+                }
+            }
+            entry.itsChangeCount = changeCount;
+            entry.itsGeneration = generation;
+        }
+        placeRecords(placeRecs, placeEntries, fileData);
+
+        // Remove the records no longer in the file
+        if (numPrevSeen != numPrevEntries) {
+            Iterator<RecordEntry> iter = itsRecordEntries.values().iterator();
+            while (iter.hasNext()) {
+                RecordEntry entry = iter.next();
+                if (entry.itsGeneration != generation) {
+                    unplaceRecord(entry);
+                    iter.remove();
+                }
+            }
+        }
+        itsViewChangeCount = fileData.getChangeCount();
+    }
+
+    /**
+     * Add records to the group tree if they match the filter.  Many records
+     * are matched in parallel before they are added to the tree in order.
+     */
+    private void placeRecords(List<PwsRecord> recs, List<RecordEntry> entries,
+                              PasswdFileData fileData)
+    {
+        int numRecs = recs.size();
+        MatchTask task = new MatchTask(recs, fileData,
+                                       new MatchPwsRecord[numRecs],
+                                       new String[numRecs], 0, numRecs);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if ((parallelism > 1) && (numRecs > MIN_TASK_RECORDS)) {
+            if (itsFilter != null) {
+                itsFilter.prepareFilter(fileData, itsContext);
+            }
+            getMatchPool(parallelism).invoke(task);
+        } else {
+            task.match();
+        }
+
+        for (int i = 0; i < numRecs; ++i) {
+            placeRecord(entries.get(i), task.itsMatches[i], task.itsGroups[i]);
+        }
+    }
+
+    /**
+     * Add a matched record to the group tree
+     *
+     * @param match The matched record; null if not matched
+     */
+    private void placeRecord(RecordEntry entry, @Nullable MatchPwsRecord match,
+                             String group)
+    {
+        entry.itsNode = null;
+        entry.itsMatch = match;
+        if (match == null) {
+            return;
+        }
+
+        GroupNode node = itsRootNode;
+        if (itsRecordOptions.itsIsGroupRecords) {
+            for (String g: getGroupPath(group)) {
+                GroupNode groupNode = node.getGroup(g);
+                if (groupNode == null) {
+                    groupNode = new GroupNode(node, g);
+                    node.putGroup(g, groupNode, itsGroupComp);
+                }
+                node = groupNode;
+            }
+        }
+        entry.itsNode = node;
+        node.addRecord(match);
+    }
+
+    /**
+     * Remove a record from the group tree
+     */
+    private static void unplaceRecord(RecordEntry entry)
+    {
+        if (entry.itsNode != null) {
+            entry.itsNode.removeRecord(entry.itsMatch);
+            entry.itsNode = null;
+            entry.itsMatch = null;
+        }
+    }
+
+    /**
+     * Get the split path of a group.  The paths and their group names are
+     * cached and shared between the records in the same groups.
+     */
+    private String[] getGroupPath(String group)
+    {
+        if (group == null) {
+            group = "";
+        }
+        String[] path = itsGroupPaths.get(group);
+        if (path == null) {
+            ArrayList<String> groups = new ArrayList<>();
+            PasswdFileData.splitGroup(group, groups);
+            path = new String[groups.size()];
+            for (int i = 0; i < path.length; ++i) {
+                String name = groups.get(i);
+                String interned = itsGroupNames.get(name);
+                if (interned == null) {
+                    itsGroupNames.put(name, name);
+                    interned = name;
+                }
+                path[i] = interned;
+            }
+            itsGroupPaths.put(group, path);
+        }
+        return path;
+    }
+
     /** Update the current group */
     private void updateCurrentGroup()
     {
@@ -503,6 +705,41 @@ public final class PasswdFileDataView
         return itsFilter.filterRecord(rec, fileData, itsContext);
     }
 
+    /**
+     * Get the pool for parallel matching and listing of records
+     */
+    private static synchronized ForkJoinPool getMatchPool(int parallelism)
+    {
+        if (itsMatchPool == null) {
+            itsMatchPool = new ForkJoinPool(parallelism);
+        }
+        return itsMatchPool;
+    }
+
+    /**
+     * Merge the sorted groups and the sorted record items.  Groups are
+     * placed before records which compare equally, as in a stable sort of
+     * the groups followed by the records.
+     */
+    private static List<PasswdRecordListData> mergeSorted(
+            List<PasswdRecordListData> groups,
+            PasswdRecordListData[] recs,
+            PasswdRecordListDataComparator comp)
+    {
+        List<PasswdRecordListData> merged =
+                new ArrayList<>(groups.size() + recs.length);
+        int recIdx = 0;
+        for (PasswdRecordListData group: groups) {
+            while ((recIdx < recs.length) &&
+                   (comp.compare(recs[recIdx], group) < 0)) {
+                merged.add(recs[recIdx++]);
+            }
+            merged.add(group);
+        }
+        merged.addAll(Arrays.asList(recs).subList(recIdx, recs.length));
+        return merged;
+    }
+
     /**
      * Recursively visit all records under a group.  Must be called while
      * synchronized.
@@ -548,17 +785,173 @@ public final class PasswdFileDataView
     }
 
 
+    /**
+     * A task to filter a range of records and get the matched records and
+     * their groups.  The file data must not change while the task runs.
+     */
+    private final class MatchTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<PwsRecord> itsRecs;
+        private final PasswdFileData itsFileData;
+        /** The matched records; null for those not matched */
+        private final MatchPwsRecord[] itsMatches;
+        private final String[] itsGroups;
+        private final int itsStart;
+        private final int itsEnd;
+
+        /**
+         * Constructor
+         */
+        private MatchTask(List<PwsRecord> recs, PasswdFileData fileData,
+                          MatchPwsRecord[] matches, String[] groups,
+                          int start, int end)
+        {
+            itsRecs = recs;
+            itsFileData = fileData;
+            itsMatches = matches;
+            itsGroups = groups;
+            itsStart = start;
+            itsEnd = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ((itsEnd - itsStart) <= MIN_TASK_RECORDS) {
+                match();
+                return;
+            }
+
+            int mid = (itsStart + itsEnd) >>> 1;
+            invokeAll(new MatchTask(itsRecs, itsFileData, itsMatches,
+                                    itsGroups, itsStart, mid),
+                      new MatchTask(itsRecs, itsFileData, itsMatches,
+                                    itsGroups, mid, itsEnd));
+        }
+
+        /**
+         * Match the range on the current thread
+         */
+        private void match()
+        {
+            boolean isGroupRecords = itsRecordOptions.itsIsGroupRecords;
+            for (int i = itsStart; i < itsEnd; ++i) {
+                PwsRecord rec = itsRecs.get(i);
+                String match = filterRecord(rec, itsFileData);
+                if (match == null) {
+                    continue;
+                }
+                itsMatches[i] = new MatchPwsRecord(rec, itsFileData, match);
+                if (isGroupRecords) {
+                    itsGroups[i] = itsFileData.getGroup(rec);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A task to create the items for a range of records and sort them.
+     * Large ranges are split in two, and the sorted halves are merged.
+     */
+    private final class ListTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<MatchPwsRecord> itsRecs;
+        private final PasswdRecordListData[] itsData;
+        /** Buffer for merging the sorted halves of the range */
+        private final PasswdRecordListData[] itsMergeData;
+        private final PasswdRecordListDataComparator itsComp;
+        private final int itsStart;
+        private final int itsEnd;
+
+        /**
+         * Constructor
+         */
+        private ListTask(List<MatchPwsRecord> recs,
+                         PasswdRecordListData[] data,
+                         PasswdRecordListData[] mergeData,
+                         PasswdRecordListDataComparator comp,
+                         int start, int end)
+        {
+            itsRecs = recs;
+            itsData = data;
+            itsMergeData = mergeData;
+            itsComp = comp;
+            itsStart = start;
+            itsEnd = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ((itsEnd - itsStart) <= MIN_TASK_RECORDS) {
+                for (int i = itsStart; i < itsEnd; ++i) {
+                    itsData[i] = createListData(itsRecs.get(i));
+                }
+                Arrays.sort(itsData, itsStart, itsEnd, itsComp);
+                return;
+            }
+
+            int mid = (itsStart + itsEnd) >>> 1;
+            invokeAll(new ListTask(itsRecs, itsData, itsMergeData, itsComp,
+                                   itsStart, mid),
+                      new ListTask(itsRecs, itsData, itsMergeData, itsComp,
+                                   mid, itsEnd));
+            if (itsComp.compare(itsData[mid - 1], itsData[mid]) <= 0) {
+                return;
+            }
+
+            // Merge the halves keeping the order of equal items
+            int left = itsStart;
+            int right = mid;
+            for (int i = itsStart; i < itsEnd; ++i) {
+                if ((right >= itsEnd) ||
+                    ((left < mid) &&
+                     (itsComp.compare(itsData[left], itsData[right]) <= 0))) {
+                    itsMergeData[i] = itsData[left++];
+                } else {
+                    itsMergeData[i] = itsData[right++];
+                }
+            }
+            System.arraycopy(itsMergeData, itsStart, itsData, itsStart,
+                             itsEnd - itsStart);
+        }
+    }
+
+
+    /**
+     * A record's place in the group tree
+     */
+    private static final class RecordEntry
+    {
+        /** The group holding the record; null if not matched */
+        private GroupNode itsNode;
+        private MatchPwsRecord itsMatch;
+        private long itsChangeCount;
+        private int itsGeneration;
+    }
+
+
     /**
      * A group node
      */
     private static final class GroupNode
     {
+        private final GroupNode itsParent;
+        private final String itsName;
         private List<MatchPwsRecord> itsRecords = null;
         private TreeMap<String, GroupNode> itsGroups = null;
+        private int itsNumRecords = 0;
 
         /** Constructor */
-        protected GroupNode()
+        protected GroupNode(GroupNode parent, String name)
         {
+            itsParent = parent;
+            itsName = name;
         }
 
         /** Add a record */
@@ -568,6 +961,29 @@ public final class PasswdFileDataView
                 itsRecords = new ArrayList<>();
             }
             itsRecords.add(rec);
+            for (GroupNode node = this; node != null; node = node.itsParent) {
+                ++node.itsNumRecords;
+            }
+        }
+
+        /**
+         * Remove a record.  Groups left without records are removed from
+         * the tree.
+         */
+        protected final void removeRecord(MatchPwsRecord rec)
+        {
+            if ((itsRecords == null) || !itsRecords.remove(rec)) {
+                return;
+            }
+            for (GroupNode node = this; node != null; node = node.itsParent) {
+                --node.itsNumRecords;
+            }
+
+            GroupNode node = this;
+            while ((node.itsParent != null) && (node.itsNumRecords == 0)) {
+                node.itsParent.itsGroups.remove(node.itsName);
+                node = node.itsParent;
+            }
         }
 
         /** Get the records */
@@ -605,16 +1021,7 @@ public final class PasswdFileDataView
         /** Get the number of records */
         protected final int getNumRecords()
         {
-            int num = 0;
-            if (itsRecords != null) {
-                num += itsRecords.size();
-            }
-            if (itsGroups != null) {
-                for (GroupNode child: itsGroups.values()) {
-                    num += child.getNumRecords();
-                }
-            }
-            return num;
+            return itsNumRecords;
         }
     }
 
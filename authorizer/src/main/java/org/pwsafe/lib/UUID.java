@@ -168,6 +168,33 @@ public class UUID implements Comparable<Object>, Serializable
         return 0;
     }
 
+    /**
+     * Returns a hash code for this <code>UUID</code> consistent with
+     * {@link #equals(UUID)}.
+     */
+    @Override
+    public int hashCode()
+    {
+        long hash = getHigh() ^ getLow();
+        return (int)(hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Returns the first 8 bytes of the UUID as a big-endian long.
+     */
+    public long getHigh()
+    {
+        return getLong(0);
+    }
+
+    /**
+     * Returns the last 8 bytes of the UUID as a big-endian long.
+     */
+    public long getLow()
+    {
+        return getLong(8);
+    }
+
     /**
      * Returns a byte array containing a copy of the 16 byte UUID.
      *
@@ -214,4 +241,16 @@ public class UUID implements Comparable<Object>, Serializable
                Util.bytesToHex(uuid, 8, 2) + '-' +
                Util.bytesToHex(uuid, 10, 6) + '}';
     }
+
+    /**
+     * Get 8 bytes of the UUID starting at the offset as a big-endian long
+     */
+    private long getLong(int offset)
+    {
+        long val = 0;
+        for (int ii = offset; ii < (offset + 8); ++ii) {
+            val = (val << 8) | (TheUUID[ii] & 0xff);
+        }
+        return val;
+    }
 }
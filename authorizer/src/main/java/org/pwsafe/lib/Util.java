@@ -28,6 +28,12 @@ public final class Util
 
     private static final SecureRandom randGen = new SecureRandom();
 
+    /**
+     * Number of hash iterations between interrupt checks when stretching a
+     * passphrase
+     */
+    private static final int STRETCH_SLICE_ITERS = 4096;
+
     /**
      * Private to prevent instantiation.
      */
@@ -372,6 +378,75 @@ public final class Util
         }
     }
 
+    /**
+     * Calculate the stretched keys of several passphrases together
+     *
+     * @param passphrases the candidate passphrases
+     * @param salt        the salt from the file
+     * @param iter        the number of iters from the file
+     * @return the stretched user keys for comparison
+     */
+    public static byte[][] stretchPassphrases(byte[][] passphrases,
+                                              byte[] salt, int iter)
+    {
+        byte[][] p = new byte[passphrases.length][];
+        try {
+            for (int i = 0; i < passphrases.length; ++i) {
+                p[i] = mergeBytes(passphrases[i], salt);
+            }
+            return SHA256Pws.digestNMulti(p, iter);
+        } finally {
+            for (byte[] merged: p) {
+                if (merged != null) {
+                    clearArray(merged);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculate the stretched key as {@link #stretchPassphrase}, stopping
+     * early if the current thread is interrupted.  The hash chain is
+     * computed in slices of iterations with the interrupt checked between
+     * them.
+     *
+     * @param passphrase the user entered passphrase
+     * @param salt       the salt from the file
+     * @param iter       the number of iters from the file
+     * @return the stretched user key for comparison; null if interrupted
+     */
+    public static byte[] stretchPassphraseInterruptibly(byte[] passphrase,
+                                                        byte[] salt,
+                                                        int iter)
+    {
+        byte[] p = mergeBytes(passphrase, salt);
+        byte[] output = null;
+        try {
+            byte[] input = p;
+            // digestN hashes iter+1 times
+            int remaining = iter + 1;
+            while (remaining > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    if (output != null) {
+                        clearArray(output);
+                    }
+                    return null;
+                }
+                int numHashes = Math.min(remaining, STRETCH_SLICE_ITERS);
+                byte[] next = SHA256Pws.digestN(input, numHashes - 1);
+                if (output != null) {
+                    clearArray(output);
+                }
+                output = next;
+                input = output;
+                remaining -= numHashes;
+            }
+            return output;
+        } finally {
+            clearArray(p);
+        }
+    }
+
     /**
      * Clear the contents of a byte array
      */
@@ -36,6 +36,11 @@ public class HmacPws
         itsMac.update(incoming);
     }
 
+    public final void digest(byte[] incoming, int offset, int length)
+    {
+        itsMac.update(incoming, offset, length);
+    }
+
     public final byte[] doFinal()
     {
         return itsMac.doFinal();
@@ -84,6 +84,10 @@ public class InMemoryKey
             if (buffer.hasArray()) {
                 byte[] content = buffer.array();
                 Arrays.fill(content, (byte)0);
+            } else {
+                for (int i = 0; i < buffer.limit(); i++) {
+                    buffer.put(i, (byte)0);
+                }
             }
             buffer = null;
         }
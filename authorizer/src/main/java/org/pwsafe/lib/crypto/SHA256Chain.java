@@ -0,0 +1,152 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package org.pwsafe.lib.crypto;
+
+import java.util.Arrays;
+
+/**
+ * SHA-256 hash chain for key stretching where each step hashes the 32 byte
+ * digest of the previous step.  As the input is always one digest, each step
+ * is a single compression of a block with fixed padding.  The chain is kept
+ * as state words in fixed arrays so no memory is allocated per step.
+ */
+final class SHA256Chain
+{
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+            0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19};
+
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5,
+            0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3,
+            0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc,
+            0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+            0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13,
+            0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3,
+            0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5,
+            0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+            0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2};
+
+    /**
+     * Private to prevent instantiation
+     */
+    private SHA256Chain()
+    {
+    }
+
+    private static int sigma0(int x)
+    {
+        return Integer.rotateRight(x, 2) ^ Integer.rotateRight(x, 13) ^
+               Integer.rotateRight(x, 22);
+    }
+
+    private static int sigma1(int x)
+    {
+        return Integer.rotateRight(x, 6) ^ Integer.rotateRight(x, 11) ^
+               Integer.rotateRight(x, 25);
+    }
+
+    /**
+     * Hash a digest iter more times
+     *
+     * @param digest the 32 byte digest which is replaced by the final digest
+     * @param iter   the number of times to hash
+     */
+    static void iterate(byte[] digest, int iter)
+    {
+        int[] h = new int[8];
+        int[] w = new int[64];
+        for (int i = 0; i < 8; ++i) {
+            h[i] = ((digest[4 * i] & 0xff) << 24) |
+                   ((digest[4 * i + 1] & 0xff) << 16) |
+                   ((digest[4 * i + 2] & 0xff) << 8) |
+                   (digest[4 * i + 3] & 0xff);
+        }
+
+        for (int n = 0; n < iter; ++n) {
+            // The block is the previous digest followed by the padding for a
+            // 256 bit message
+            System.arraycopy(h, 0, w, 0, 8);
+            w[8] = 0x80000000;
+            Arrays.fill(w, 9, 15, 0);
+            w[15] = 256;
+            for (int i = 16; i < 64; ++i) {
+                int w2 = w[i - 2];
+                int w15 = w[i - 15];
+                int gamma1 = Integer.rotateRight(w2, 17) ^
+                             Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+                int gamma0 = Integer.rotateRight(w15, 7) ^
+                             Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+                w[i] = gamma1 + w[i - 7] + gamma0 + w[i - 16];
+            }
+
+            int a = IV[0];
+            int b = IV[1];
+            int c = IV[2];
+            int d = IV[3];
+            int e = IV[4];
+            int f = IV[5];
+            int g = IV[6];
+            int hh = IV[7];
+            for (int r = 0; r < 64; r += 4) {
+                hh += sigma1(e) + (g ^ (e & (f ^ g))) + K[r] + w[r];
+                d += hh;
+                hh += sigma0(a) + (((a | b) & c) | (a & b));
+                g += sigma1(d) + (f ^ (d & (e ^ f))) + K[r + 1] + w[r + 1];
+                c += g;
+                g += sigma0(hh) + (((hh | a) & b) | (hh & a));
+                f += sigma1(c) + (e ^ (c & (d ^ e))) + K[r + 2] + w[r + 2];
+                b += f;
+                f += sigma0(g) + (((g | hh) & a) | (g & hh));
+                e += sigma1(b) + (d ^ (b & (c ^ d))) + K[r + 3] + w[r + 3];
+                a += e;
+                e += sigma0(f) + (((f | g) & hh) | (f & g));
+
+                // After four rounds the roles of the two halves of the
+                // working variables are exchanged
+                int t = a;
+                a = e;
+                e = t;
+                t = b;
+                b = f;
+                f = t;
+                t = c;
+                c = g;
+                g = t;
+                t = d;
+                d = hh;
+                hh = t;
+            }
+
+            h[0] = IV[0] + a;
+            h[1] = IV[1] + b;
+            h[2] = IV[2] + c;
+            h[3] = IV[3] + d;
+            h[4] = IV[4] + e;
+            h[5] = IV[5] + f;
+            h[6] = IV[6] + g;
+            h[7] = IV[7] + hh;
+        }
+
+        for (int i = 0; i < 8; ++i) {
+            digest[4 * i] = (byte)(h[i] >>> 24);
+            digest[4 * i + 1] = (byte)(h[i] >>> 16);
+            digest[4 * i + 2] = (byte)(h[i] >>> 8);
+            digest[4 * i + 3] = (byte)h[i];
+        }
+        Arrays.fill(h, 0);
+        Arrays.fill(w, 0);
+    }
+}
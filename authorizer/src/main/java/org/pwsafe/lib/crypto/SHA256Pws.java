@@ -41,6 +41,28 @@ public class SHA256Pws {
         }
     }
 
+    /**
+     * Hash each of the incoming byte arrays iter+1 times.  The native code
+     * computes the hash chains of several inputs together.
+     */
+    public static byte[][] digestNMulti(byte[][] p, int iter)
+    {
+        if (IS_CHROME) {
+            return digestNMultiJava(p, iter);
+        } else {
+            return digestNMultiNative(p, iter);
+        }
+    }
+
+    /**
+     * Whether {@link #digestNMulti} hashes the inputs together rather than
+     * one after another
+     */
+    public static boolean isMultiDigestCombined()
+    {
+        return !IS_CHROME;
+    }
+
     /**
      * Hash the incoming bytes
      */
@@ -50,17 +72,26 @@ public class SHA256Pws {
     }
 
     /**
-     * Hash the incoming bytes iter+1 times using the Java provider
+     * Hash the incoming bytes iter+1 times using the Java provider for the
+     * first hash and a Java hash chain for the iterations
      */
     public static byte[] digestNJava(byte[] p, int iter)
     {
-        MessageDigest digest = getSha();
-        byte[] output = digest.digest(p);
+        byte[] output = getSha().digest(p);
+        SHA256Chain.iterate(output, iter);
+        return output;
+    }
 
-        for (int i = 0; i < iter; ++i) {
-            output = digest.digest(output);
+    /**
+     * Hash each of the incoming byte arrays iter+1 times using the Java
+     * provider
+     */
+    public static byte[][] digestNMultiJava(byte[][] p, int iter)
+    {
+        byte[][] output = new byte[p.length][];
+        for (int i = 0; i < p.length; ++i) {
+            output[i] = digestNJava(p[i], iter);
         }
-
         return output;
     }
 
@@ -69,6 +100,12 @@ public class SHA256Pws {
      */
     public static native byte[] digestNNative(byte[] p, int iter);
 
+    /**
+     * Hash each of the incoming byte arrays iter+1 times using native code
+     * which interleaves the hash chains of several inputs
+     */
+    public static native byte[][] digestNMultiNative(byte[][] p, int iter);
+
     /**
      * Get the default provider's SHA-256 digester
      */
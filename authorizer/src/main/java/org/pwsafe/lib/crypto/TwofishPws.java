@@ -33,6 +33,11 @@ public class TwofishPws
         cipher.init(forEncryption, piv);
     }
 
+    /**
+     * Size of a cipher block
+     */
+    public static final int BLOCK_SIZE = 16;
+
     public final byte[] processCBC(byte[] input)
     {
         byte[] out = new byte[input.length];
@@ -40,6 +45,28 @@ public class TwofishPws
         return out;
     }
 
+    /**
+     * Process multiple blocks in CBC mode.  The input and output may be the
+     * same buffer to process the blocks in place.
+     *
+     * @param input   the input buffer
+     * @param inOff   the offset of the first input block
+     * @param length  the number of bytes to process; must be a multiple of
+     *                {@link #BLOCK_SIZE}
+     * @param output  the output buffer
+     * @param outOff  the offset of the first output block
+     */
+    public final void processCBC(byte[] input, int inOff, int length,
+                                 byte[] output, int outOff)
+    {
+        if ((length % BLOCK_SIZE) != 0) {
+            throw new IllegalArgumentException("length");
+        }
+        for (int pos = 0; pos < length; pos += BLOCK_SIZE) {
+            cipher.processBlock(input, inOff + pos, output, outOff + pos);
+        }
+    }
+
     public static byte[] processECB(byte[] key, boolean forEncryption,
                                     byte[] input)
     {
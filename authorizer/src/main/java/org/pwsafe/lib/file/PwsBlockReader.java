@@ -0,0 +1,706 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package org.pwsafe.lib.file;
+
+import org.pwsafe.lib.Util;
+import org.pwsafe.lib.crypto.HmacPws;
+import org.pwsafe.lib.crypto.TwofishPws;
+import org.pwsafe.lib.exception.EndOfFileException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reader for the encrypted records of a V3 file.  Loading is pipelined in
+ * three stages:
+ * <ul>
+ * <li>A decrypt stage reads the file in chunks up to the end of file marker
+ * and decrypts each chunk into a small ring of buffers.  CBC decryption of
+ * a block only needs its own ciphertext and that of the previous block, so
+ * a large chunk is split into ranges of blocks which are decrypted
+ * concurrently on a fork-join pool.</li>
+ * <li>An HMAC stage follows the field framing through the decrypted chunks
+ * and digests the field data.</li>
+ * <li>The caller parses the fields from the decrypted chunks.</li>
+ * </ul>
+ * A chunk is reused once both the parser and HMAC stage are finished with
+ * it.  For a lazily loaded file, a chunk also keeps its ciphertext so the
+ * parser can capture the encrypted blocks of the fields it does not decode.
+ */
+final class PwsBlockReader
+{
+    private static final int BLOCK_SIZE = TwofishPws.BLOCK_SIZE;
+
+    /**
+     * Size of the chunks read from the file
+     */
+    private static final int CHUNK_SIZE = 128 * 1024;
+
+    /**
+     * Number of chunks in the ring between the stages
+     */
+    private static final int NUM_CHUNKS = 3;
+
+    /**
+     * Minimum number of bytes decrypted by a parallel task
+     */
+    private static final int MIN_TASK_SIZE = 16 * 1024;
+
+    private static ForkJoinPool itsDecryptPool;
+    private static ExecutorService itsStageExecutor;
+
+    private final InputStream itsInput;
+    private final Chunk[] itsChunks = new Chunk[NUM_CHUNKS];
+    private final BlockingQueue<Chunk> itsFreeChunks =
+            new ArrayBlockingQueue<>(NUM_CHUNKS);
+    private final BlockingQueue<Chunk> itsParseChunks =
+            new ArrayBlockingQueue<>(NUM_CHUNKS);
+    private final BlockingQueue<Chunk> itsHmacChunks =
+            new ArrayBlockingQueue<>(NUM_CHUNKS);
+    private final DecryptStage itsDecryptStage;
+    private final HmacStage itsHmacStage;
+    private final Future<Void> itsDecryptResult;
+    private final Future<byte[]> itsHmacResult;
+
+    /**
+     * The chunk being parsed
+     */
+    private Chunk itsChunk;
+
+    /**
+     * Position of the next decrypted byte to parse in the chunk
+     */
+    private int itsPos = 0;
+
+    /**
+     * The encrypted blocks being captured; null if not capturing
+     */
+    private byte[] itsCapture;
+
+    /**
+     * Position of the next captured byte
+     */
+    private int itsCapturePos = 0;
+
+    /**
+     * Constructor which starts the decrypt and HMAC stages
+     *
+     * @param input  the stream positioned at the start of the records
+     * @param key    the record key
+     * @param iv     the initial CBC vector
+     * @param hasher the HMAC for the record fields
+     * @param keepEncrypted whether the encrypted blocks of fields can be
+     *                      captured
+     */
+    PwsBlockReader(InputStream input, byte[] key, byte[] iv, HmacPws hasher,
+                   boolean keepEncrypted)
+    {
+        itsInput = input;
+        for (int i = 0; i < NUM_CHUNKS; ++i) {
+            itsChunks[i] = new Chunk(keepEncrypted);
+            itsFreeChunks.add(itsChunks[i]);
+        }
+
+        itsDecryptStage = new DecryptStage(key, iv);
+        itsHmacStage = new HmacStage(hasher);
+        ExecutorService executor = getStageExecutor();
+        itsDecryptResult = executor.submit(itsDecryptStage);
+        itsHmacResult = executor.submit(itsHmacStage);
+    }
+
+    /**
+     * Read and decrypt bytes from the records
+     *
+     * @param buff         the buffer to read the bytes into
+     * @param offset       the offset in the buffer of the first byte
+     * @param length       the number of bytes to read
+     * @param atFieldStart whether the read is at the start of a field where
+     *                     the end of the records may be found
+     * @throws EndOfFileException If the end of the records is reached at the
+     *                            start of a field
+     * @throws IOException        If a read error occurs or the end of the
+     *                            records is reached within a field
+     */
+    void read(byte[] buff, int offset, int length, boolean atFieldStart)
+            throws EndOfFileException, IOException
+    {
+        transfer(buff, offset, length, atFieldStart);
+    }
+
+    /**
+     * Skip decrypted bytes within a field
+     *
+     * @param length the number of bytes to skip
+     * @throws IOException If a read error occurs or the end of the records is
+     *                     reached
+     */
+    void skip(int length) throws IOException
+    {
+        try {
+            transfer(null, 0, length, false);
+        } catch (EndOfFileException e) {
+            throw new IOException("Unexpected end of file", e);
+        }
+    }
+
+    /**
+     * Start capturing the encrypted blocks of a field.  Must be called just
+     * after the first block of the field is read.  The capture starts with
+     * the ciphertext block preceding the field, which is the CBC vector for
+     * the field, followed by the first block and the blocks of the field
+     * which are then read or skipped.
+     *
+     * @param length the length of the field after its first block
+     * @throws IllegalStateException If the encrypted blocks are not kept
+     */
+    void startCapture(int length)
+    {
+        if ((itsChunk == null) || (itsChunk.itsRaw == null) ||
+            (itsPos < BLOCK_SIZE)) {
+            throw new IllegalStateException("No encrypted field block");
+        }
+        itsCapture = new byte[2 * BLOCK_SIZE + length];
+        if (itsPos == BLOCK_SIZE) {
+            System.arraycopy(itsChunk.itsStartIv, 0, itsCapture, 0,
+                             BLOCK_SIZE);
+        } else {
+            System.arraycopy(itsChunk.itsRaw, itsPos - 2 * BLOCK_SIZE,
+                             itsCapture, 0, BLOCK_SIZE);
+        }
+        System.arraycopy(itsChunk.itsRaw, itsPos - BLOCK_SIZE,
+                         itsCapture, BLOCK_SIZE, BLOCK_SIZE);
+        itsCapturePos = 2 * BLOCK_SIZE;
+    }
+
+    /**
+     * Finish capturing the encrypted blocks of a field
+     *
+     * @return The captured blocks
+     * @throws IllegalStateException If the whole field was not captured
+     */
+    byte[] finishCapture()
+    {
+        byte[] capture = itsCapture;
+        itsCapture = null;
+        if ((capture == null) || (itsCapturePos != capture.length)) {
+            throw new IllegalStateException("Incomplete field capture");
+        }
+        return capture;
+    }
+
+    /**
+     * Read the raw bytes which follow the end of the records.  Must only be
+     * called once the end has been reached.
+     *
+     * @param buff the buffer to read the bytes into
+     * @throws EndOfFileException If end of file occurs before any data is
+     *                            read
+     * @throws IOException        If a read error occurs
+     */
+    void readTrailer(byte[] buff) throws EndOfFileException, IOException
+    {
+        int pos = 0;
+        if ((itsChunk != null) && (itsChunk.itsTrailerPos >= 0)) {
+            pos = Math.min(buff.length,
+                           itsChunk.itsRawEnd - itsChunk.itsTrailerPos);
+            System.arraycopy(itsChunk.itsData, itsChunk.itsTrailerPos,
+                             buff, 0, pos);
+            itsChunk.itsTrailerPos += pos;
+        }
+        while (pos < buff.length) {
+            int count = itsInput.read(buff, pos, buff.length - pos);
+            if (count == -1) {
+                if (pos == 0) {
+                    throw new EndOfFileException();
+                }
+                throw new IOException("short read");
+            }
+            pos += count;
+        }
+    }
+
+    /**
+     * Get the HMAC of the record fields, waiting for the HMAC stage to
+     * digest all of the records
+     */
+    byte[] getHmac() throws IOException
+    {
+        try {
+            return itsHmacResult.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted reading HMAC", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error reading HMAC", e.getCause());
+        }
+    }
+
+    /**
+     * Stop the stages if still running and clear the decrypted data
+     */
+    void close()
+    {
+        itsDecryptResult.cancel(true);
+        itsHmacResult.cancel(true);
+        itsDecryptStage.awaitStopped();
+        itsHmacStage.awaitStopped();
+        for (Chunk chunk: itsChunks) {
+            Arrays.fill(chunk.itsData, (byte)0);
+        }
+        itsChunk = null;
+        itsPos = 0;
+        itsCapture = null;
+    }
+
+    /**
+     * Copy or skip decrypted bytes
+     */
+    private void transfer(byte[] buff, int offset, int length,
+                          boolean atFieldStart)
+            throws EndOfFileException, IOException
+    {
+        int pos = 0;
+        while (pos < length) {
+            if (((itsChunk == null) || (itsPos == itsChunk.itsEnd)) &&
+                !nextChunk()) {
+                if (atFieldStart && (pos == 0)) {
+                    throw new EndOfFileException();
+                }
+                throw new IOException("Unexpected end of file");
+            }
+            int numBytes = Math.min(length - pos, itsChunk.itsEnd - itsPos);
+            if (buff != null) {
+                System.arraycopy(itsChunk.itsData, itsPos,
+                                 buff, offset + pos, numBytes);
+            }
+            if (itsCapture != null) {
+                int captureBytes = Math.min(numBytes,
+                                            itsCapture.length - itsCapturePos);
+                System.arraycopy(itsChunk.itsRaw, itsPos,
+                                 itsCapture, itsCapturePos, captureBytes);
+                itsCapturePos += captureBytes;
+            }
+            itsPos += numBytes;
+            pos += numBytes;
+        }
+    }
+
+    /**
+     * Move to the next chunk to parse
+     *
+     * @return Whether any bytes are available
+     */
+    private boolean nextChunk() throws IOException
+    {
+        if (itsChunk != null) {
+            if (itsChunk.itsIsLast) {
+                return false;
+            }
+            release(itsChunk);
+            itsChunk = null;
+        }
+
+        try {
+            itsChunk = itsParseChunks.take();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted reading file", e);
+        }
+        itsPos = 0;
+        if (itsChunk.itsError != null) {
+            throw new IOException(itsChunk.itsError.getMessage(),
+                                  itsChunk.itsError);
+        }
+        return itsChunk.itsEnd > 0;
+    }
+
+    /**
+     * Release a stage's use of a chunk, returning it to the free chunks if
+     * no longer used
+     */
+    private void release(Chunk chunk)
+    {
+        if (chunk.itsRefs.decrementAndGet() == 0) {
+            itsFreeChunks.add(chunk);
+        }
+    }
+
+    /**
+     * Get the pool for parallel decryption
+     */
+    private static synchronized ForkJoinPool getDecryptPool(int parallelism)
+    {
+        if (itsDecryptPool == null) {
+            itsDecryptPool = new ForkJoinPool(parallelism);
+        }
+        return itsDecryptPool;
+    }
+
+    /**
+     * Get the executor for the decrypt and HMAC stages
+     */
+    private static synchronized ExecutorService getStageExecutor()
+    {
+        if (itsStageExecutor == null) {
+            itsStageExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "PwsBlockReader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return itsStageExecutor;
+    }
+
+    /**
+     * A chunk of the file passed between the stages
+     */
+    private static final class Chunk
+    {
+        private final byte[] itsData = new byte[CHUNK_SIZE];
+
+        /**
+         * The encrypted bytes of the chunk; null if not kept
+         */
+        private final byte[] itsRaw;
+
+        /**
+         * The ciphertext block preceding the chunk
+         */
+        private final byte[] itsStartIv = new byte[BLOCK_SIZE];
+
+        /**
+         * Number of stages using the chunk
+         */
+        private final AtomicInteger itsRefs = new AtomicInteger();
+
+        /**
+         * End of the decrypted bytes
+         */
+        private int itsEnd;
+
+        /**
+         * End of the raw bytes read into the chunk
+         */
+        private int itsRawEnd;
+
+        /**
+         * Position of the raw bytes following the end of the records;
+         * -1 if the end is not in the chunk
+         */
+        private int itsTrailerPos;
+
+        /**
+         * Whether the chunk is the last one
+         */
+        private boolean itsIsLast;
+
+        /**
+         * Error reading the chunk
+         */
+        private IOException itsError;
+
+        /**
+         * Constructor
+         *
+         * @param keepRaw whether the encrypted bytes are kept
+         */
+        private Chunk(boolean keepRaw)
+        {
+            itsRaw = keepRaw ? new byte[CHUNK_SIZE] : null;
+        }
+    }
+
+    /**
+     * Base class for a stage run on the stage executor.  A stage which has
+     * not started when the reader is closed is never run.
+     */
+    private abstract static class Stage<T> implements Callable<T>
+    {
+        private final AtomicBoolean itsIsClaimed = new AtomicBoolean();
+        private final CountDownLatch itsStopped = new CountDownLatch(1);
+
+        @Override
+        public final T call() throws InterruptedException
+        {
+            if (!itsIsClaimed.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                return run();
+            } finally {
+                itsStopped.countDown();
+            }
+        }
+
+        /**
+         * Wait for the stage to stop if it has started so the chunks are no
+         * longer in use
+         */
+        protected final void awaitStopped()
+        {
+            if (itsIsClaimed.compareAndSet(false, true)) {
+                return;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    itsStopped.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Run the stage
+         */
+        protected abstract T run() throws InterruptedException;
+    }
+
+    /**
+     * The stage which reads and decrypts the chunks
+     */
+    private final class DecryptStage extends Stage<Void>
+    {
+        private final byte[] itsKey;
+        private final byte[] itsIv;
+
+        /**
+         * Constructor
+         */
+        private DecryptStage(byte[] key, byte[] iv)
+        {
+            itsKey = key;
+            itsIv = iv.clone();
+        }
+
+        @Override
+        protected Void run() throws InterruptedException
+        {
+            Chunk chunk;
+            do {
+                chunk = itsFreeChunks.take();
+                try {
+                    fill(chunk);
+                } catch (IOException e) {
+                    chunk.itsEnd = 0;
+                    chunk.itsTrailerPos = -1;
+                    chunk.itsError = e;
+                    chunk.itsIsLast = true;
+                }
+                chunk.itsRefs.set(2);
+                itsHmacChunks.put(chunk);
+                itsParseChunks.put(chunk);
+            } while (!chunk.itsIsLast);
+            return null;
+        }
+
+        /**
+         * Fill a chunk with the next decrypted bytes
+         */
+        private void fill(Chunk chunk) throws IOException
+        {
+            byte[] data = chunk.itsData;
+            int len = 0;
+            boolean isStreamEnd = false;
+            while (len < data.length) {
+                int count = itsInput.read(data, len, data.length - len);
+                if (count == -1) {
+                    isStreamEnd = true;
+                    break;
+                }
+                len += count;
+            }
+
+            int end = len - (len % BLOCK_SIZE);
+            int trailerPos = isStreamEnd ? end : -1;
+            for (int i = 0; i < end; i += BLOCK_SIZE) {
+                if (isEofMarker(data, i)) {
+                    end = i;
+                    trailerPos = i + BLOCK_SIZE;
+                    break;
+                }
+            }
+
+            if (chunk.itsRaw != null) {
+                System.arraycopy(data, 0, chunk.itsRaw, 0, end);
+                System.arraycopy(itsIv, 0, chunk.itsStartIv, 0, BLOCK_SIZE);
+            }
+            decrypt(data, end);
+            chunk.itsEnd = end;
+            chunk.itsRawEnd = len;
+            chunk.itsTrailerPos = trailerPos;
+            chunk.itsIsLast = (trailerPos >= 0);
+            chunk.itsError = null;
+        }
+
+        /**
+         * Decrypt the start of a chunk in place
+         */
+        private void decrypt(byte[] data, int length)
+        {
+            if (length == 0) {
+                return;
+            }
+            byte[] nextIv = Arrays.copyOfRange(data, length - BLOCK_SIZE,
+                                               length);
+
+            DecryptTask task = new DecryptTask(data, 0, length, itsKey,
+                                               itsIv.clone());
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            if ((parallelism > 1) && (length > MIN_TASK_SIZE)) {
+                getDecryptPool(parallelism).invoke(task);
+            } else {
+                task.decrypt();
+            }
+
+            System.arraycopy(nextIv, 0, itsIv, 0, BLOCK_SIZE);
+        }
+
+        /**
+         * Check whether the block at a position is the end of file marker
+         */
+        private boolean isEofMarker(byte[] data, int pos)
+        {
+            for (int i = 0; i < BLOCK_SIZE; ++i) {
+                if (data[pos + i] != PwsFileV3.EOF_BYTES_RAW[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The stage which digests the field data of the decrypted chunks.  Each
+     * field starts with a block holding the data length, type, and up to 11
+     * bytes of data, followed by blocks with the remaining data.
+     */
+    private final class HmacStage extends Stage<byte[]>
+    {
+        private final HmacPws itsHasher;
+
+        /**
+         * Number of data bytes in the current field still to digest
+         */
+        private int itsFieldRemaining = 0;
+
+        /**
+         * Constructor
+         */
+        private HmacStage(HmacPws hasher)
+        {
+            itsHasher = hasher;
+        }
+
+        @Override
+        protected byte[] run() throws InterruptedException
+        {
+            boolean isLast;
+            do {
+                Chunk chunk = itsHmacChunks.take();
+                isLast = chunk.itsIsLast;
+                if (chunk.itsError == null) {
+                    digest(chunk.itsData, chunk.itsEnd);
+                }
+                release(chunk);
+            } while (!isLast);
+            return itsHasher.doFinal();
+        }
+
+        /**
+         * Digest the field data in the decrypted blocks
+         */
+        private void digest(byte[] data, int end)
+        {
+            for (int pos = 0; pos < end; pos += BLOCK_SIZE) {
+                if (itsFieldRemaining == 0) {
+                    int len = Util.getIntFromByteArray(data, pos);
+                    int firstLen = Math.max(0, Math.min(len, 11));
+                    itsHasher.digest(data, pos + 5, firstLen);
+                    itsFieldRemaining = Math.max(0, len - firstLen);
+                } else {
+                    int dataLen = Math.min(BLOCK_SIZE, itsFieldRemaining);
+                    itsHasher.digest(data, pos, dataLen);
+                    itsFieldRemaining -= dataLen;
+                }
+            }
+        }
+    }
+
+    /**
+     * A task to decrypt a range of blocks in place.  Large ranges are split
+     * in two with the second half using a copy of the last ciphertext
+     * block of the first half as its CBC vector.
+     */
+    private static final class DecryptTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] itsBuff;
+        private final int itsStart;
+        private final int itsEnd;
+        private final byte[] itsKey;
+        private final byte[] itsIv;
+
+        /**
+         * Constructor
+         */
+        private DecryptTask(byte[] buff, int start, int end,
+                            byte[] key, byte[] iv)
+        {
+            itsBuff = buff;
+            itsStart = start;
+            itsEnd = end;
+            itsKey = key;
+            itsIv = iv;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int len = itsEnd - itsStart;
+            if (len <= MIN_TASK_SIZE) {
+                decrypt();
+                return;
+            }
+
+            // The vector for the second half must be copied before the first
+            // half is decrypted in place
+            int mid = itsStart + (len / (2 * BLOCK_SIZE)) * BLOCK_SIZE;
+            byte[] midIv = Arrays.copyOfRange(itsBuff, mid - BLOCK_SIZE, mid);
+            invokeAll(new DecryptTask(itsBuff, itsStart, mid, itsKey, itsIv),
+                      new DecryptTask(itsBuff, mid, itsEnd, itsKey, midIv));
+        }
+
+        /**
+         * Decrypt the range on the current thread
+         */
+        private void decrypt()
+        {
+            TwofishPws cipher = new TwofishPws(itsKey, false, itsIv);
+            cipher.processCBC(itsBuff, itsStart, itsEnd - itsStart,
+                              itsBuff, itsStart);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package org.pwsafe.lib.file;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of ciphers so values sealed in memory can be used from several
+ * threads at once.  A Cipher is not thread-safe, so each thread acquires its
+ * own cipher from the pool and releases it when done.  The pool creates
+ * ciphers as needed and keeps a few idle ones for reuse.
+ */
+final class PwsCipherPool<CipherT>
+{
+    private static final int MAX_IDLE = 8;
+
+    /**
+     * Factory for the ciphers in the pool
+     */
+    interface Factory<CipherT>
+    {
+        /**
+         * Create a cipher
+         */
+        CipherT create();
+    }
+
+    private final Factory<CipherT> itsFactory;
+    private final ArrayDeque<CipherT> itsIdle = new ArrayDeque<>(MAX_IDLE);
+
+    /**
+     * Constructor
+     */
+    PwsCipherPool(Factory<CipherT> factory)
+    {
+        itsFactory = factory;
+    }
+
+    /**
+     * Acquire a cipher which must be released after use
+     */
+    CipherT acquire()
+    {
+        synchronized (itsIdle) {
+            CipherT cipher = itsIdle.pollFirst();
+            if (cipher != null) {
+                return cipher;
+            }
+        }
+        return itsFactory.create();
+    }
+
+    /**
+     * Release a cipher acquired from the pool
+     */
+    void release(CipherT cipher)
+    {
+        synchronized (itsIdle) {
+            if (itsIdle.size() < MAX_IDLE) {
+                itsIdle.addFirst(cipher);
+            }
+        }
+    }
+
+    /**
+     * Remove the idle ciphers
+     */
+    void clear()
+    {
+        synchronized (itsIdle) {
+            itsIdle.clear();
+        }
+    }
+}
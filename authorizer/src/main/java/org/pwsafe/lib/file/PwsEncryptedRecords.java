@@ -0,0 +1,94 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package org.pwsafe.lib.file;
+
+import org.pwsafe.lib.crypto.TwofishPws;
+import org.pwsafe.lib.exception.MemoryKeyException;
+
+import java.util.Arrays;
+
+/**
+ * The key for the encrypted fields kept by the lazily loaded records of a V3
+ * file.  A record keeps only the ciphertext of its secret fields until they
+ * are first used.  Each field is kept as the ciphertext block preceding the
+ * field, which is the CBC vector for the field, followed by the blocks of the
+ * field.  The key is cleared once every record has decoded its fields or the
+ * file is disposed.
+ */
+final class PwsEncryptedRecords
+{
+    private static final int BLOCK_SIZE = TwofishPws.BLOCK_SIZE;
+
+    private final byte[] itsKey;
+    private int itsNumPending = 0;
+    private boolean itsIsDisposed = false;
+
+    /**
+     * Constructor
+     *
+     * @param key the record key
+     */
+    PwsEncryptedRecords(byte[] key)
+    {
+        itsKey = key.clone();
+    }
+
+    /**
+     * Add a record whose fields are kept encrypted until decoded
+     */
+    synchronized void addPending()
+    {
+        ++itsNumPending;
+    }
+
+    /**
+     * Remove a record once its fields are decoded.  The key is cleared when
+     * no records remain.
+     */
+    synchronized void removePending()
+    {
+        if ((--itsNumPending == 0) && !itsIsDisposed) {
+            dispose();
+        }
+    }
+
+    /**
+     * Decrypt an encrypted field
+     *
+     * @param field the CBC vector followed by the blocks of the field
+     * @return The decrypted blocks which the caller must clear
+     * @throws MemoryKeyException If the key has been cleared
+     * @throws IllegalArgumentException If the field is not whole blocks
+     */
+    synchronized byte[] decrypt(byte[] field)
+    {
+        if (itsIsDisposed) {
+            throw new MemoryKeyException(
+                    new IllegalStateException("Records disposed"));
+        }
+        if ((field.length < BLOCK_SIZE) || ((field.length % BLOCK_SIZE) != 0)) {
+            throw new IllegalArgumentException(
+                    "Invalid field length " + field.length);
+        }
+
+        int length = field.length - BLOCK_SIZE;
+        byte[] data = new byte[length];
+        new TwofishPws(itsKey, false, Arrays.copyOf(field, BLOCK_SIZE))
+                .processCBC(field, BLOCK_SIZE, length, data, 0);
+        return data;
+    }
+
+    /**
+     * Clear the key
+     */
+    synchronized void dispose()
+    {
+        Arrays.fill(itsKey, (byte)0);
+        itsIsDisposed = true;
+    }
+}
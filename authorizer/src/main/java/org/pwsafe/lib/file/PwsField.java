@@ -99,7 +99,7 @@ public abstract class PwsField implements Comparable<Object>, Serializable
     @Override
     public int hashCode()
     {
-        return Value.hashCode();
+        return getValue().hashCode();
     }
 
     /**
@@ -111,6 +111,6 @@ public abstract class PwsField implements Comparable<Object>, Serializable
     @NonNull
     public String toString()
     {
-        return Value.toString();
+        return getValue().toString();
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package org.pwsafe.lib.file;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The fields of a record kept in ascending order of their type.  Field types
+ * fit in a byte, so the types are kept in a small sorted byte array with the
+ * fields in a parallel array instead of a map with boxed keys and entry
+ * objects.  A record has few fields so lookups are a linear scan.
+ */
+final class PwsFieldArray implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_TYPE = 0xff;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private byte[] itsTypes = new byte[INITIAL_CAPACITY];
+    private PwsField[] itsFields = new PwsField[INITIAL_CAPACITY];
+    private int itsSize = 0;
+
+    /**
+     * Get the number of fields
+     */
+    int size()
+    {
+        return itsSize;
+    }
+
+    /**
+     * Get the type of the field at an index
+     */
+    int typeAt(int idx)
+    {
+        return itsTypes[idx] & MAX_TYPE;
+    }
+
+    /**
+     * Get the field at an index
+     */
+    PwsField fieldAt(int idx)
+    {
+        return itsFields[idx];
+    }
+
+    /**
+     * Get the field of a type
+     *
+     * @return The field; null if not present
+     */
+    PwsField get(int type)
+    {
+        int idx = indexOf(type);
+        return (idx >= 0) ? itsFields[idx] : null;
+    }
+
+    /**
+     * Set the field of a type
+     *
+     * @return The previous field; null if not present
+     * @throws IllegalArgumentException If the type does not fit in a byte
+     */
+    PwsField put(int type, PwsField field)
+    {
+        if ((type < 0) || (type > MAX_TYPE)) {
+            throw new IllegalArgumentException("Invalid type: " + type);
+        }
+        int idx = indexOf(type);
+        if (idx >= 0) {
+            PwsField prev = itsFields[idx];
+            itsFields[idx] = field;
+            return prev;
+        }
+
+        idx = -idx - 1;
+        if (itsSize == itsTypes.length) {
+            itsTypes = Arrays.copyOf(itsTypes, itsSize * 2);
+            itsFields = Arrays.copyOf(itsFields, itsSize * 2);
+        }
+        System.arraycopy(itsTypes, idx, itsTypes, idx + 1, itsSize - idx);
+        System.arraycopy(itsFields, idx, itsFields, idx + 1, itsSize - idx);
+        itsTypes[idx] = (byte)type;
+        itsFields[idx] = field;
+        ++itsSize;
+        return null;
+    }
+
+    /**
+     * Remove the field of a type
+     *
+     * @return The removed field; null if not present
+     */
+    PwsField remove(int type)
+    {
+        int idx = indexOf(type);
+        if (idx < 0) {
+            return null;
+        }
+        PwsField prev = itsFields[idx];
+        --itsSize;
+        System.arraycopy(itsTypes, idx + 1, itsTypes, idx, itsSize - idx);
+        System.arraycopy(itsFields, idx + 1, itsFields, idx, itsSize - idx);
+        itsFields[itsSize] = null;
+        return prev;
+    }
+
+    /**
+     * Get an iterator over the field types in ascending order
+     */
+    Iterator<Integer> types()
+    {
+        return new Iterator<Integer>()
+        {
+            private int itsIdx = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return itsIdx < itsSize;
+            }
+
+            @Override
+            public Integer next()
+            {
+                if (itsIdx >= itsSize) {
+                    throw new NoSuchElementException();
+                }
+                return typeAt(itsIdx++);
+            }
+        };
+    }
+
+    /**
+     * Find the index of a type
+     *
+     * @return The index if found; otherwise, (-(insertion point) - 1)
+     */
+    private int indexOf(int type)
+    {
+        for (int i = 0; i < itsSize; ++i) {
+            int idxType = itsTypes[i] & MAX_TYPE;
+            if (idxType == type) {
+                return i;
+            } else if (idxType > type) {
+                return -i - 1;
+            }
+        }
+        return -itsSize - 1;
+    }
+}
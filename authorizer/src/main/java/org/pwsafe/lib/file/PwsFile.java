@@ -105,6 +105,10 @@ public abstract class PwsFile
      */
     private static final int BLOCK_LENGTH = 8;
 
+    /**
+     * Size of the buffer for the stream used to save a file to the storage
+     */
+    protected static final int SAVE_BUFFER_SIZE = 64 * 1024;
 
     /**
      * Default encoding which should work with most Windows files
@@ -197,8 +201,11 @@ public abstract class PwsFile
     private InMemoryKey memoryKey;
     private byte[] memoryIv;
 
-    private Cipher itsReadCipher;
-    private Cipher itsWriteCipher;
+    private final PwsCipherPool<Cipher> itsReadCiphers =
+            new PwsCipherPool<>(() -> createCipher(false));
+    private final PwsCipherPool<Cipher> itsWriteCiphers =
+            new PwsCipherPool<>(() -> createCipher(true));
+    private PwsSealer itsSealer;
 
     /**
      * The password encoding which was used to open the file
@@ -307,38 +314,80 @@ public abstract class PwsFile
     public void dispose()
     {
         passphrase = null;
-        if (memoryKey != null) {
-            memoryKey.dispose();
-        }
-        if (memoryIv != null) {
-            Arrays.fill(memoryIv, (byte)0);
-            memoryIv = null;
+        itsReadCiphers.clear();
+        itsWriteCiphers.clear();
+        synchronized (this) {
+            if (itsSealer != null) {
+                itsSealer.clear();
+                itsSealer = null;
+            }
+            if (memoryKey != null) {
+                memoryKey.dispose();
+            }
+            if (memoryIv != null) {
+                Arrays.fill(memoryIv, (byte)0);
+                memoryIv = null;
+            }
         }
     }
 
+    /**
+     * Get a cipher for unsealing values kept encrypted in memory.  Each
+     * caller gets its own cipher from a pool so values can be unsealed from
+     * several threads.  The cipher must be released with releaseReadCipher.
+     */
     final Cipher getReadCipher()
     {
-        return getCipher(false);
+        return itsReadCiphers.acquire();
+    }
+
+    /**
+     * Release a cipher from getReadCipher
+     */
+    final void releaseReadCipher(Cipher cipher)
+    {
+        itsReadCiphers.release(cipher);
     }
 
+    /**
+     * Get a cipher for sealing values kept encrypted in memory.  The cipher
+     * must be released with releaseWriteCipher.
+     */
     final Cipher getWriteCipher()
     {
-        return getCipher(true);
+        return itsWriteCiphers.acquire();
     }
 
-    private Cipher getCipher(boolean forWriting)
+    /**
+     * Release a cipher from getWriteCipher
+     */
+    final void releaseWriteCipher(Cipher cipher)
+    {
+        itsWriteCiphers.release(cipher);
+    }
+
+    /**
+     * Get the sealer for values such as passwords which are kept encrypted
+     * in memory
+     */
+    final synchronized PwsSealer getSealer()
+    {
+        if (itsSealer == null) {
+            itsSealer = new PwsSealer();
+        }
+        return itsSealer;
+    }
+
+    /**
+     * Create a cipher for the memory key
+     */
+    private synchronized Cipher createCipher(boolean forWriting)
     {
         if (memoryIv == null) {
             memoryIv = new byte[CIPHER_KEY_LEN];
             Util.newRandBytes(memoryIv);
         }
 
-        if (forWriting && (itsWriteCipher != null)) {
-            return itsWriteCipher;
-        } else if (!forWriting && (itsReadCipher != null)) {
-            return itsReadCipher;
-        }
-
         SecretKeySpec key = new SecretKeySpec(getKeyBytes(), CIPHER_KEY_SPEC);
         IvParameterSpec ivSpec = new IvParameterSpec(memoryIv);
         Cipher cipher;
@@ -349,13 +398,8 @@ public abstract class PwsFile
         }
 
         try {
-            if (forWriting) {
-                cipher.init(Cipher.ENCRYPT_MODE, key, ivSpec);
-                itsWriteCipher = cipher;
-            } else {
-                cipher.init(Cipher.DECRYPT_MODE, key, ivSpec);
-                itsReadCipher = cipher;
-            }
+            cipher.init(forWriting ? Cipher.ENCRYPT_MODE :
+                                Cipher.DECRYPT_MODE, key, ivSpec);
         } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
             throw new MemoryKeyException("memory key generation failed", e);
         }
@@ -406,13 +450,14 @@ public abstract class PwsFile
      */
     public Owner<PwsPassword> getPassphrase()
     {
+        Cipher cipher = getReadCipher();
         try {
-            return new Owner<>(
-                    PwsPassword.unseal(passphrase,
-                                       getReadCipher()));
+            return new Owner<>(PwsPassword.unseal(passphrase, cipher));
         } catch (IllegalBlockSizeException | BadPaddingException |
                 ClassNotFoundException | IOException e) {
             throw new RuntimeCryptoException(e.getMessage());
+        } finally {
+            releaseReadCipher(cipher);
         }
     }
 
@@ -489,6 +534,16 @@ public abstract class PwsFile
         setModified();
     }
 
+    /**
+     * Replaces all of the records, such as when changes are applied to the
+     * records read from the file
+     */
+    final void replaceRecords(Collection<PwsRecord> recs)
+    {
+        records.clear();
+        records.addAll(recs);
+    }
+
     /**
      * Opens the database.
      *
@@ -549,23 +604,46 @@ public abstract class PwsFile
     }
 
     /**
-     * Reads raw (un-decrypted) bytes from the file.  The method attempts
-     * to read <code>bytes.length</code> bytes from the file.
+     * Reads raw (un-decrypted) bytes from the file.  The method reads
+     * <code>bytes.length</code> bytes from the file, blocking as needed when
+     * the underlying stream returns fewer bytes than requested.
      *
      * @param bytes the array to be filled from the file.
-     * @throws EndOfFileException If end of file occurs whilst reading the data.
+     * @throws EndOfFileException If end of file occurs before any data is
+     * read.
      * @throws IOException        If an error occurs whilst reading the
-     * file.
+     * file or end of file occurs part way through the data.
      */
     public final void readBytes(byte[] bytes)
             throws IOException, EndOfFileException
     {
-        int count = inStream.read(bytes);
+        readBytes(bytes, 0, bytes.length);
+    }
 
-        if (count == -1) {
-            throw new EndOfFileException();
-        } else if (count < bytes.length) {
-            throw new IOException("short read");
+    /**
+     * Reads raw (un-decrypted) bytes from the file into a range of an array.
+     *
+     * @param bytes  the array to be filled from the file.
+     * @param offset the offset in the array of the first byte to read.
+     * @param length the number of bytes to read.
+     * @throws EndOfFileException If end of file occurs before any data is
+     * read.
+     * @throws IOException        If an error occurs whilst reading the
+     * file or end of file occurs part way through the data.
+     */
+    public final void readBytes(byte[] bytes, int offset, int length)
+            throws IOException, EndOfFileException
+    {
+        int pos = 0;
+        while (pos < length) {
+            int count = inStream.read(bytes, offset + pos, length - pos);
+            if (count == -1) {
+                if (pos == 0) {
+                    throw new EndOfFileException();
+                }
+                throw new IOException("short read");
+            }
+            pos += count;
         }
     }
 
@@ -649,6 +727,22 @@ public abstract class PwsFile
      */
     public final void save()
             throws IOException, ConcurrentModificationException
+    {
+        checkSave();
+        saveAs(storage);
+        modified = false;
+        lastStorageChange = storage.getModifiedDate();
+    }
+
+    /**
+     * Checks whether the file can be saved back to its storage
+     *
+     * @throws IOException                     if the file is read only
+     * @throws ConcurrentModificationException if the underlying store was
+     *                                         independently changed
+     */
+    final void checkSave()
+            throws IOException, ConcurrentModificationException
     {
         if (isReadOnly())
             throw new IOException("File is read only");
@@ -662,10 +756,6 @@ public abstract class PwsFile
                         "possible!");
             }
         }
-
-        saveAs(storage);
-        modified = false;
-        lastStorageChange = storage.getModifiedDate();
     }
 
     /**
@@ -688,6 +778,14 @@ public abstract class PwsFile
         modified = true;
     }
 
+    /**
+     * Reset the flag to indicate that the file's changes have been saved
+     */
+    final void resetModified()
+    {
+        modified = false;
+    }
+
     /**
      * Sets the passphrase that will be used to encrypt the file when it is
      * saved.
@@ -695,11 +793,13 @@ public abstract class PwsFile
     public void setPassphrase(Owner<PwsPassword>.Param passwdParam)
     {
         Owner<PwsPassword> passwd = passwdParam.use();
+        Cipher cipher = getWriteCipher();
         try {
-            passphrase = passwd.get().seal(getWriteCipher());
+            passphrase = passwd.get().seal(cipher);
         } catch (IllegalBlockSizeException | IOException e) {
             throw new RuntimeCryptoException(e.getMessage());
         } finally {
+            releaseWriteCipher(cipher);
             passwd.close();
         }
     }
@@ -715,6 +815,19 @@ public abstract class PwsFile
         outStream.write(buffer);
     }
 
+    /**
+     * Writes a range of unencrypted bytes to the file.
+     *
+     * @param buffer the data to be written.
+     * @param offset the offset of the first byte to write.
+     * @param length the number of bytes to write.
+     */
+    public void writeBytes(byte[] buffer, int offset, int length)
+            throws IOException
+    {
+        outStream.write(buffer, offset, length);
+    }
+
     /**
      * Encrypts then writes the contents of <code>buff</code> to the file.
      *
@@ -169,9 +169,28 @@ public class PwsFileFactory
                                    Owner<PwsPassword>.Param passwd)
             throws EndOfFileException, InvalidPassphraseException, IOException,
                    UnsupportedFileVersionException
+    {
+        return loadFile(filename, passwd, false);
+    }
+
+    /**
+     * Loads a Password Safe file.  It returns the appropriate subclass of
+     * {@link PwsFile}.
+     *
+     * @param filename    the name of the file to open
+     * @param passwd      the passphrase for the file
+     * @param lazyRecords whether the fields of V3 records are decoded when
+     *                    first used rather than when loading
+     * @return The correct subclass of {@link PwsFile} for the file.
+     */
+    public static PwsFile loadFile(String filename,
+                                   Owner<PwsPassword>.Param passwd,
+                                   boolean lazyRecords)
+            throws EndOfFileException, InvalidPassphraseException, IOException,
+                   UnsupportedFileVersionException
     {
         PwsStorage storage = new PwsFileStorage(filename, filename);
-        return loadFromStorage(storage, passwd);
+        return loadFromStorage(storage, passwd, lazyRecords);
     }
 
     /**
@@ -186,6 +205,25 @@ public class PwsFileFactory
                                           Owner<PwsPassword>.Param passwd)
             throws EndOfFileException, InvalidPassphraseException, IOException,
                    UnsupportedFileVersionException
+    {
+        return loadFromStorage(storage, passwd, false);
+    }
+
+    /**
+     * Loads a Password Safe file.  It returns the appropriate subclass of
+     * {@link PwsFile}.
+     *
+     * @param storage     the password storage
+     * @param passwd      the passphrase for the file
+     * @param lazyRecords whether the fields of V3 records are decoded when
+     *                    first used rather than when loading
+     * @return The correct subclass of {@link PwsFile} for the file.
+     */
+    public static PwsFile loadFromStorage(PwsStorage storage,
+                                          Owner<PwsPassword>.Param passwd,
+                                          boolean lazyRecords)
+            throws EndOfFileException, InvalidPassphraseException, IOException,
+                   UnsupportedFileVersionException
     {
         PwsFile file;
         try {
@@ -194,9 +232,12 @@ public class PwsFileFactory
             // First check for a v3 file...
             byte[] first4Bytes = Util.getBytes(header, 0, 4);
             if (Util.bytesAreEqual("PWS3".getBytes(), first4Bytes)) {
-                file = new PwsFileV3(storage, passwd);
-                file.readAll();
-                file.close();
+                file = new PwsFileV3(storage, passwd, lazyRecords);
+                try {
+                    file.readAll();
+                } finally {
+                    file.close();
+                }
                 return file;
             }
 
@@ -16,6 +16,7 @@ import org.pwsafe.lib.exception.EndOfFileException;
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.InvalidKeyException;
+import java.util.Arrays;
 
 /**
  * This class encapsulates the header fields of a PasswordSafe database.  The
@@ -48,7 +49,7 @@ public class PwsFileHeaderV3 implements Serializable
 
     private byte[] tag = new byte[4];
     private final byte[] salt = new byte[32];
-    private final int iter;
+    private int iter;
     private byte[] password = new byte[32];
     private byte[] b1 = new byte[16];
     private byte[] b2 = new byte[16];
@@ -63,7 +64,7 @@ public class PwsFileHeaderV3 implements Serializable
     PwsFileHeaderV3()
     {
         tag = PwsFileV3.ID_STRING;
-        iter = 2048;
+        iter = PwsStretchCalibrator.MIN_ITER;
         Util.newRandBytes(salt);
         Util.newRandBytes(IV);
     }
@@ -114,6 +115,16 @@ public class PwsFileHeaderV3 implements Serializable
         return iter;
     }
 
+    /**
+     * Sets the number of iterations used when the header is next saved.
+     *
+     * @param iter number of iterations
+     */
+    void setIter(int iter)
+    {
+        this.iter = iter;
+    }
+
     /**
      * Gets a copy of the stretched password.
      *
@@ -174,6 +185,20 @@ public class PwsFileHeaderV3 implements Serializable
         return Util.cloneByteArray(IV);
     }
 
+    /**
+     * Clear the header fields
+     */
+    void clear()
+    {
+        Arrays.fill(salt, (byte)0);
+        Arrays.fill(password, (byte)0);
+        Arrays.fill(b1, (byte)0);
+        Arrays.fill(b2, (byte)0);
+        Arrays.fill(b3, (byte)0);
+        Arrays.fill(b4, (byte)0);
+        Arrays.fill(IV, (byte)0);
+    }
+
     /**
      * Write the header to the file.
      *
@@ -13,6 +13,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Date;
 import java.util.Objects;
 
@@ -30,33 +33,94 @@ public class PwsFileStorage extends PwsStreamStorage
     private static final Log LOG = Log.getInstance(Objects.requireNonNull(
             PwsFileStorage.class.getPackage()).getName());
 
+    /**
+     * Minimum file size for which the file is memory-mapped when loading.
+     * Smaller files are read through the buffered stream.
+     */
+    private static final long MAP_MIN_SIZE = 64 * 1024;
+
+    /**
+     * Suffix of the name of a journal file
+     */
+    private static final String JOURNAL_SUFFIX = ".pwsj";
+
+    /**
+     * The stream of the file being loaded
+     */
+    private final FileInputStream itsLoadFileStream;
+
     /*
      * Build an implementation given the filename for the underlying storage.
      */
     public PwsFileStorage(String identifier, String fileToOpen)
             throws IOException
     {
-        super(identifier,
-              (fileToOpen == null) ? null : new FileInputStream(fileToOpen));
+        this(identifier,
+             (fileToOpen == null) ? null : new FileInputStream(fileToOpen));
+    }
+
+    /**
+     * Constructor with the stream of the file to load
+     */
+    private PwsFileStorage(String identifier, FileInputStream stream)
+    {
+        super(identifier, stream);
+        itsLoadFileStream = stream;
+    }
+
+    /**
+     * Get a stream over all the bytes in the file.  Large files are
+     * memory-mapped so their bytes are read directly from the mapping
+     * without intermediate buffering.  The buffered stream is used as a
+     * fallback if the file can't be mapped.
+     */
+    @Override
+    public InputStream loadStream() throws IOException
+    {
+        if (itsLoadFileStream != null) {
+            try {
+                FileChannel channel = itsLoadFileStream.getChannel();
+                long size = channel.size();
+                if ((size >= MAP_MIN_SIZE) && (size <= Integer.MAX_VALUE)) {
+                    return new MappedInputStream(
+                            channel.map(FileChannel.MapMode.READ_ONLY,
+                                        0, size));
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to map " + getIdentifier() + ": " +
+                         e.getMessage());
+            }
+        }
+        return super.loadStream();
     }
 
     /**
-     * Takes the (encrypted) bytes and writes them out to the file.
+     * Streams the (encrypted) bytes from the writer out to the file.
      * <p/>
      * This particular method takes steps to make sure that the
      * original file is not overwritten or deleted until the
-     * new file has been successfully saved.
+     * new file has been successfully saved.  The bytes are written to a
+     * temporary file which is synced and then renamed over the original.
      */
     @Override
-    public boolean save(byte[] data, boolean isV3)
+    public boolean save(SaveWriter writer, boolean isV3)
     {
         try {
             File file = new File(getIdentifier());
             if (!file.exists()) {
                 /* Original file doesn't exist, just go ahead and write it
-                 * (no backup, temp files needed).
+                 * (no backup, temp files needed).  Remove a partially
+                 * written file if the write fails.
                  */
-                writeFile(file, data);
+                boolean written = false;
+                try {
+                    writeFile(file, writer);
+                    written = true;
+                } finally {
+                    if (!written && !file.delete()) {
+                        LOG.error("Error deleting partial file");
+                    }
+                }
                 return true;
             }
             File dir = file.getCanonicalFile().getParentFile();
@@ -74,7 +138,7 @@ public class PwsFileStorage extends PwsStreamStorage
             try {
                 tempFile = File.createTempFile("pwsafe", null,
                                                FilePath);
-                writeFile(tempFile, data);
+                writeFile(tempFile, writer);
 
                 createBackupFile(fromFile, toFile);
 
@@ -97,6 +161,21 @@ public class PwsFileStorage extends PwsStreamStorage
         }
     }
 
+    /**
+     * Get the journal file next to the password file.  There is no journal
+     * when the file is saved under another name, such as when saving a
+     * backup file.
+     */
+    @Override
+    public File getJournalFile()
+    {
+        File file = new File(getIdentifier());
+        if (!getSaveFileName(file, true).equals(file.getName())) {
+            return null;
+        }
+        return getJournalFile(file);
+    }
+
     @Override
     public Date getModifiedDate()
     {
@@ -140,11 +219,23 @@ public class PwsFileStorage extends PwsStreamStorage
         }
     }
 
-    public static void writeFile(File file, byte[] data) throws IOException
+    /**
+     * Get the journal file for a password file
+     */
+    public static File getJournalFile(File file)
+    {
+        return new File(file.getPath() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Write a file from a writer and sync it to the storage device
+     */
+    public static void writeFile(File file, SaveWriter writer)
+            throws IOException
     {
         FileOutputStream outStream = new FileOutputStream(file);
         try {
-            outStream.write(data);
+            writer.write(outStream);
             outStream.getFD().sync();
         } catch (IOException e) {
             try {
@@ -164,4 +255,57 @@ public class PwsFileStorage extends PwsStreamStorage
             }
         }
     }
+
+    /**
+     * An input stream which reads from a memory-mapped file
+     */
+    private static final class MappedInputStream extends InputStream
+    {
+        private final ByteBuffer itsBuffer;
+
+        /**
+         * Constructor
+         */
+        private MappedInputStream(ByteBuffer buffer)
+        {
+            itsBuffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            if (!itsBuffer.hasRemaining()) {
+                return -1;
+            }
+            return itsBuffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0) {
+                return 0;
+            }
+            if (!itsBuffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, itsBuffer.remaining());
+            itsBuffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int skip = (int)Math.max(0, Math.min(n, itsBuffer.remaining()));
+            itsBuffer.position(itsBuffer.position() + skip);
+            return skip;
+        }
+
+        @Override
+        public int available()
+        {
+            return itsBuffer.remaining();
+        }
+    }
 }
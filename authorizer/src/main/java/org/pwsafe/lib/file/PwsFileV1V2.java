@@ -17,8 +17,9 @@ import org.pwsafe.lib.exception.RecordLoadException;
 import org.pwsafe.lib.exception.UnsupportedFileVersionException;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.util.Iterator;
@@ -169,9 +170,17 @@ public abstract class PwsFileV1V2 extends PwsFile
     @Override
     public void saveAs(PwsStorage saveStorage) throws IOException
     {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        outStream = baos;
+        if (!saveStorage.save(this::writeFile, false)) {
+            throw new IOException("Unable to save file");
+        }
+    }
 
+    /**
+     * Write the encrypted file to a stream as it is saved to the storage
+     */
+    private void writeFile(OutputStream out) throws IOException
+    {
+        outStream = new BufferedOutputStream(out, SAVE_BUFFER_SIZE);
         try {
             header.save(this);
 
@@ -195,18 +204,7 @@ public abstract class PwsFileV1V2 extends PwsFile
                 rec.saveRecord(this);
             }
 
-            outStream.close();
-
-            if (!saveStorage.save(baos.toByteArray(), false)) {
-                throw new IOException("Unable to save file");
-            }
-        } catch (IOException e) {
-            try {
-                outStream.close();
-            } catch (Exception e2) {
-                // do nothing we're going to throw the original exception
-            }
-            throw e;
+            outStream.flush();
         } finally {
             outStream = null;
             algorithm = null;
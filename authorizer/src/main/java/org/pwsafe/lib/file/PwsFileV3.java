@@ -7,26 +7,36 @@
  */
 package org.pwsafe.lib.file;
 
+import org.pwsafe.lib.UUID;
 import org.pwsafe.lib.Util;
 import org.pwsafe.lib.crypto.HmacPws;
 import org.pwsafe.lib.crypto.SHA256Pws;
 import org.pwsafe.lib.crypto.TwofishPws;
 import org.pwsafe.lib.exception.EndOfFileException;
-import org.pwsafe.lib.exception.MemoryKeyException;
 import org.pwsafe.lib.exception.RecordLoadException;
 import org.pwsafe.lib.exception.UnsupportedFileVersionException;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-
-import javax.crypto.BadPaddingException;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.SealedObject;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Encapsulates version 3 PasswordSafe files.
@@ -46,20 +56,30 @@ public final class PwsFileV3 extends PwsFile
      */
     public static final byte[] ID_STRING = "PWS3".getBytes();
 
-    private SealedObject sealedHeaderV3;
+    private PwsFileHeaderV3 headerV3;
 
     /**
      * End of File marker. HMAC follows this tag.
      */
-    private static final byte[] EOF_BYTES_RAW = "PWS3-EOFPWS3-EOF".getBytes();
+    static final byte[] EOF_BYTES_RAW = "PWS3-EOFPWS3-EOF".getBytes();
 
     private byte[] stretchedPassword;
     public byte[] decryptedRecordKey;
     public byte[] decryptedHmacKey;
 
     private TwofishPws twofishCbc;
+    private PwsBlockReader blockReader;
+    private boolean lazyRecords;
+    private PwsEncryptedRecords encryptedRecords;
     HmacPws hasher;
     private PwsRecordV3 headerRecord;
+    private boolean calibrateIter = false;
+    private byte[] writtenHmac;
+    private PwsJournal journal;
+    private IdentityHashMap<PwsRecord, UUID> journalRecords;
+    private boolean journalFullSave = false;
+
+    private static ExecutorService itsPasswordExecutor;
 
     /**
      * Constructs and initialises a new, empty version 3 PasswordSafe
@@ -90,6 +110,29 @@ public final class PwsFileV3 extends PwsFile
         super(storage, passwd, null);
     }
 
+    /**
+     * Constructs a version 3 PasswordSafe database by loading it from
+     * storage.  When <code>lazyRecords</code> is true, the secret fields of
+     * each record, such as the password, are not decoded when loading.  A
+     * record keeps only the encrypted blocks of its secret fields, which are
+     * decoded when first used.
+     *
+     * @param storage     the underlying storage to use to open the database.
+     * @param passwd      the passphrase for the database.
+     * @param lazyRecords whether the record fields are decoded when first
+     *                    used.
+     */
+    PwsFileV3(PwsStorage storage, Owner<PwsPassword>.Param passwd,
+              boolean lazyRecords)
+            throws EndOfFileException, IOException,
+                   UnsupportedFileVersionException
+    {
+        super();
+        this.storage = storage;
+        this.lazyRecords = lazyRecords;
+        open(passwd, null);
+    }
+
 
     /* (non-Javadoc)
      * @see org.pwsafe.lib.file.PwsFile#dispose()
@@ -104,31 +147,160 @@ public final class PwsFileV3 extends PwsFile
             Arrays.fill(decryptedHmacKey, (byte)0);
         if (decryptedRecordKey != null)
             Arrays.fill(decryptedRecordKey, (byte)0);
+        if (encryptedRecords != null) {
+            encryptedRecords.dispose();
+            encryptedRecords = null;
+        }
+        if (journal != null) {
+            journal.dispose();
+            journal = null;
+        }
+        journalRecords = null;
+        synchronized (this) {
+            if (headerV3 != null) {
+                headerV3.clear();
+                headerV3 = null;
+            }
+        }
     }
 
-    private byte[] checkPassword(Owner<PwsPassword>.Param passwdParam,
-                                 String encoding,
-                                 PwsFileHeaderV3 headerV3,
-                                 int iter)
+    /**
+     * Find the encoding of the password which matches the file.  The
+     * password is encoded with the hint encoding, the configured encodings,
+     * and the default charset in order of preference.  Only the distinct
+     * encoded bytes are checked, and if there is more than one, they are
+     * stretched together by the native hash code, or concurrently with the
+     * others cancelled once one matches.
+     *
+     * @return The matching encoding; null if none match
+     */
+    private PasswordMatch findPasswordEncoding(
+            Owner<PwsPassword>.Param passwdParam,
+            String encoding,
+            PwsFileHeaderV3 headerV3,
+            int iter)
+            throws IOException
     {
+        Owner<PwsPassword> passwd = passwdParam.use();
         try {
-            Owner<PwsPassword> passwd = passwdParam.use();
+            List<PasswordMatch> candidates = new ArrayList<>();
+            if (encoding != null) {
+                addPasswordCandidate(passwd.get(), encoding, encoding,
+                                     candidates);
+            }
+            for (String charset : PwsFile.getPasswordEncodings()) {
+                addPasswordCandidate(passwd.get(), charset, charset,
+                                     candidates);
+            }
+            //try another method to avoid asymmetric encoding bug in V0.8 Beta1
+            addPasswordCandidate(passwd.get(), null,
+                                 Charset.defaultCharset().name(), candidates);
+
+            if (candidates.size() == 1) {
+                PasswordMatch candidate = candidates.get(0);
+                return candidate.check(headerV3, iter) ? candidate : null;
+            }
+            if (SHA256Pws.isMultiDigestCombined()) {
+                return checkPasswordCandidates(candidates, headerV3, iter);
+            }
+
+            ExecutorCompletionService<PasswordMatch> checks =
+                    new ExecutorCompletionService<>(getPasswordExecutor());
+            List<Future<PasswordMatch>> futures = new ArrayList<>();
             try {
-                byte[] stretch =
-                        Util.stretchPassphrase(passwd.get().getBytes(encoding),
-                                               headerV3.getSalt(), iter);
-                if (Util.bytesAreEqual(headerV3.getPassword(),
-                                       SHA256Pws.digest(stretch))) {
-                    return stretch;
+                for (final PasswordMatch candidate : candidates) {
+                    futures.add(checks.submit(
+                            () -> candidate.check(headerV3, iter) ?
+                                  candidate : null));
                 }
+                for (int i = 0; i < candidates.size(); ++i) {
+                    PasswordMatch match = checks.take().get();
+                    if (match != null) {
+                        return match;
+                    }
+                }
+                return null;
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted checking password", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Error checking password",
+                                      e.getCause());
             } finally {
-                passwd.close();
+                for (Future<PasswordMatch> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        } finally {
+            passwd.close();
+        }
+    }
+
+    /**
+     * Check the password candidates by stretching them together
+     *
+     * @return The first matching candidate; null if none match
+     */
+    private static PasswordMatch checkPasswordCandidates(
+            List<PasswordMatch> candidates,
+            PwsFileHeaderV3 headerV3,
+            int iter)
+    {
+        byte[][] passwdBytes = new byte[candidates.size()][];
+        for (int i = 0; i < passwdBytes.length; ++i) {
+            passwdBytes[i] = candidates.get(i).itsPasswdBytes;
+        }
+        byte[][] stretches = Util.stretchPassphrases(
+                passwdBytes, headerV3.getSalt(), iter);
+
+        PasswordMatch match = null;
+        for (int i = 0; i < stretches.length; ++i) {
+            if ((match == null) &&
+                candidates.get(i).checkStretch(headerV3, stretches[i])) {
+                match = candidates.get(i);
+            } else {
+                Util.clearArray(stretches[i]);
             }
+        }
+        return match;
+    }
+
+    /**
+     * Add a password encoding to check if its bytes differ from those of the
+     * other candidates
+     */
+    private static void addPasswordCandidate(PwsPassword passwd,
+                                             String charset,
+                                             String encoding,
+                                             List<PasswordMatch> candidates)
+    {
+        byte[] bytes;
+        try {
+            bytes = passwd.getBytes(charset);
         } catch (UnsupportedEncodingException e) {
             // Skip this charset
+            return;
         }
+        for (PasswordMatch candidate : candidates) {
+            if (Arrays.equals(candidate.itsPasswdBytes, bytes)) {
+                return;
+            }
+        }
+        candidates.add(new PasswordMatch(encoding, bytes));
+    }
 
-        return null;
+    /**
+     * Get the executor for checking password encodings
+     */
+    private static synchronized ExecutorService getPasswordExecutor()
+    {
+        if (itsPasswordExecutor == null) {
+            itsPasswordExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "PwsFileV3Password");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return itsPasswordExecutor;
     }
 
     @Override
@@ -138,7 +310,7 @@ public final class PwsFileV3 extends PwsFile
         setPassphrase(passwdParam);
 
         if (storage != null) {
-            inStream = new ByteArrayInputStream(storage.load());
+            inStream = storage.loadStream();
             lastStorageChange = storage.getModifiedDate();
         }
         PwsFileHeaderV3 theHeaderV3 = new PwsFileHeaderV3(this);
@@ -146,44 +318,17 @@ public final class PwsFileV3 extends PwsFile
         setHeaderV3(theHeaderV3);
 
         int iter = theHeaderV3.getIter();
-        stretchedPassword = null;
-
-        if (encoding != null) {
-            stretchedPassword = checkPassword(passwdParam, encoding,
-                                              theHeaderV3, iter);
-        }
-
-        if (stretchedPassword == null) {
-            for (String charset : PwsFile.getPasswordEncodings()) {
-                stretchedPassword = checkPassword(passwdParam, charset,
-                                                  theHeaderV3, iter);
-                if (stretchedPassword != null) {
-                    encoding = charset;
-                    break;
-                }
-            }
-        }
-
-        if (stretchedPassword == null) {
-            //try another method to avoid asymmetric encoding bug in V0.8 Beta1
-            Owner<PwsPassword> passwd = passwdParam.use();
-            try {
-                stretchedPassword = Util.stretchPassphrase(
-                        passwd.get().getBytes(null),
-                        theHeaderV3.getSalt(), iter);
-                if (Util.bytesAreEqual(theHeaderV3.getPassword(),
-                                       SHA256Pws.digest(stretchedPassword))) {
-                    encoding = Charset.defaultCharset().name();
-                } else {
-                    throw new IOException("Invalid password");
-                }
-            } finally {
-                passwd.close();
-            }
+        PasswordMatch match = findPasswordEncoding(passwdParam, encoding,
+                                                   theHeaderV3, iter);
+        if (match == null) {
+            throw new IOException("Invalid password");
         }
+        stretchedPassword = match.itsStretchedPassword;
+        encoding = match.itsEncoding;
 
         setOpenPasswordEncoding(encoding);
 
+        HmacPws recordsHasher;
         try {
 
             byte[] rka = TwofishPws.processECB(stretchedPassword, false,
@@ -197,31 +342,335 @@ public final class PwsFileV3 extends PwsFile
             byte[] hkb = TwofishPws.processECB(stretchedPassword, false,
                                                theHeaderV3.getB4());
             decryptedHmacKey = Util.mergeBytes(hka, hkb);
-            hasher = new HmacPws(decryptedHmacKey);
+            recordsHasher = new HmacPws(decryptedHmacKey);
 
         } catch (Exception e) {
             e.printStackTrace();
             throw new IOException("Error reading encrypted fields", e);
         }
-        twofishCbc = new TwofishPws(decryptedRecordKey, false,
-                                    theHeaderV3.getIV());
+        if (lazyRecords) {
+            encryptedRecords = new PwsEncryptedRecords(decryptedRecordKey);
+        }
+        blockReader = new PwsBlockReader(inStream, decryptedRecordKey,
+                                         theHeaderV3.getIV(), recordsHasher,
+                                         lazyRecords);
 
+        boolean opened = false;
         try {
             readExtraHeader();
+            opened = true;
         } catch (RecordLoadException rle) {
             throw new IOException("Error reading header record", rle);
+        } finally {
+            if (!opened) {
+                blockReader.close();
+                blockReader = null;
+                if (encryptedRecords != null) {
+                    encryptedRecords.dispose();
+                    encryptedRecords = null;
+                }
+            }
         }
     }
 
 
+    /**
+     * Reads all records from the file and then applies the changes from the
+     * journal of the file if it has one
+     */
+    @Override
+    void readAll() throws IOException, UnsupportedFileVersionException
+    {
+        super.readAll();
+        File journalFile = (storage != null) ? storage.getJournalFile() : null;
+        if (journalFile != null) {
+            journal = new PwsJournal(journalFile, decryptedRecordKey,
+                                     decryptedHmacKey, getRecordsHmac());
+            replayJournal(journal.read());
+            resetJournalRecords();
+        }
+    }
+
+    @Override
+    void close() throws IOException
+    {
+        if (blockReader != null) {
+            blockReader.close();
+            blockReader = null;
+        }
+        super.close();
+    }
+
+
     @Override
     public void saveAs(PwsStorage saveStorage) throws IOException
     {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        outStream = baos;
+        if (!saveStorage.save(this::writeFile, true)) {
+            throw new IOException("Unable to save file");
+        }
+        calibrateIter = false;
+
+        // Writing the file decoded the fields of all lazily loaded records
+        if (encryptedRecords != null) {
+            encryptedRecords.dispose();
+            encryptedRecords = null;
+        }
+
+        if (saveStorage == storage) {
+            // The saved file includes the changes from the journal, and a
+            // new journal is started from the new keys and HMAC of the file
+            if (journal != null) {
+                journal.dispose();
+                journal = null;
+            }
+            File journalFile = saveStorage.getJournalFile();
+            if (journalFile != null) {
+                journal = new PwsJournal(journalFile, decryptedRecordKey,
+                                         decryptedHmacKey, writtenHmac);
+                journal.delete();
+                resetJournalRecords();
+            }
+        } else {
+            // The changes saved elsewhere are no longer known as changes for
+            // the journal of this file
+            journalFullSave = true;
+        }
+    }
+
+    /**
+     * Saves the changes to the records since the file was last saved to the
+     * journal of the file instead of writing the whole file.  The time to
+     * save is proportional to the size of the changes rather than the size
+     * of the file.  The changes are applied to the records when the file is
+     * next read, and they are included in the file when it is next saved in
+     * full.  A full save is needed when the file has no journal, the
+     * journal has reached its maximum size, or the passphrase or key
+     * stretching has changed.
+     *
+     * @param maxSize the size of the journal at which the file is saved in
+     *                full instead
+     * @return true if the changes were saved; false if the file must be
+     * saved in full
+     * @throws IOException                     if the attempt fails.  The
+     *                                         changes are kept to save
+     *                                         again.
+     * @throws ConcurrentModificationException if the underlying store was
+     *                                         independently changed
+     */
+    public boolean saveToJournal(long maxSize)
+            throws IOException, ConcurrentModificationException
+    {
+        checkSave();
+        if ((journal == null) || journalFullSave || calibrateIter ||
+            (journal.size() >= maxSize) ||
+            !journal.getFile().equals(storage.getJournalFile())) {
+            return false;
+        }
 
+        List<PwsJournal.Entry> removes = new ArrayList<>();
+        List<PwsJournal.Entry> puts = new ArrayList<>();
+        List<PwsRecordV3> putRecs = new ArrayList<>();
+        List<PwsRecord> removedRecs = Collections.emptyList();
+        try {
+            int numSaved = 0;
+            for (Iterator<PwsRecord> iter = getRecords(); iter.hasNext(); ) {
+                PwsRecordV3 rec = (PwsRecordV3)iter.next();
+                UUID savedUUID = journalRecords.get(rec);
+                if (savedUUID != null) {
+                    ++numSaved;
+                    if (!rec.isModified()) {
+                        continue;
+                    }
+                }
+
+                UUID uuid = rec.getLoadedUUID();
+                if (uuid == null) {
+                    return false;
+                }
+                if ((savedUUID != null) && !savedUUID.equals(uuid)) {
+                    removes.add(new PwsJournal.Entry(PwsJournal.OP_REMOVE,
+                                                     savedUUID, null));
+                }
+                puts.add(new PwsJournal.Entry(PwsJournal.OP_PUT, uuid,
+                                              rec.getJournalFields()));
+                putRecs.add(rec);
+            }
+
+            if (numSaved < journalRecords.size()) {
+                Set<PwsRecord> currRecs =
+                        Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Iterator<PwsRecord> iter = getRecords();
+                     iter.hasNext(); ) {
+                    currRecs.add(iter.next());
+                }
+                removedRecs = new ArrayList<>();
+                for (Map.Entry<PwsRecord, UUID> saved:
+                        journalRecords.entrySet()) {
+                    if (!currRecs.contains(saved.getKey())) {
+                        removedRecs.add(saved.getKey());
+                        removes.add(new PwsJournal.Entry(
+                                PwsJournal.OP_REMOVE, saved.getValue(), null));
+                    }
+                }
+            }
+
+            if (headerRecord.isModified()) {
+                puts.add(new PwsJournal.Entry(
+                        PwsJournal.OP_HEADER, null,
+                        headerRecord.getJournalFields()));
+            }
+
+            if (removes.isEmpty() && puts.isEmpty()) {
+                return true;
+            }
+
+            // Removals are first so a record replaced by another with the
+            // same UUID is kept
+            List<PwsJournal.Entry> entries =
+                    new ArrayList<>(removes.size() + puts.size());
+            entries.addAll(removes);
+            entries.addAll(puts);
+            journal.append(entries);
+        } finally {
+            for (PwsJournal.Entry entry: puts) {
+                entry.clear();
+            }
+        }
+
+        for (int i = 0; i < putRecs.size(); ++i) {
+            PwsRecordV3 rec = putRecs.get(i);
+            rec.resetModified();
+            // Track later changes to new records
+            rec.setLoaded();
+            journalRecords.put(rec, puts.get(i).itsUUID);
+        }
+        for (PwsRecord rec: removedRecs) {
+            journalRecords.remove(rec);
+        }
+        headerRecord.resetModified();
+        resetModified();
+        return true;
+    }
+
+    /**
+     * Gets whether the file has a journal with changes which are not yet
+     * saved in the file
+     */
+    public boolean hasJournalChanges()
+    {
+        return (journal != null) && (journal.size() > 0);
+    }
+
+    /**
+     * Sets that the file must be saved in full rather than to its journal
+     * until it is next saved in full
+     */
+    public void setJournalFullSave()
+    {
+        journalFullSave = true;
+    }
+
+    /**
+     * Sets the passphrase that will be used to encrypt the file when it is
+     * saved.  The file must then be saved in full rather than to its journal.
+     */
+    @Override
+    public void setPassphrase(Owner<PwsPassword>.Param passwdParam)
+    {
+        super.setPassphrase(passwdParam);
+        journalFullSave = true;
+    }
+
+    /**
+     * Applies the changes read from the journal to the records read from
+     * the file
+     */
+    private void replayJournal(List<PwsJournal.Entry> entries)
+            throws IOException
+    {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        // Records without a UUID or with a duplicate UUID can't be changed
+        // by the journal, so they are kept by their index
+        LinkedHashMap<String, PwsRecord> recs = new LinkedHashMap<>();
+        int idx = 0;
+        for (Iterator<PwsRecord> iter = getRecords(); iter.hasNext(); ++idx) {
+            PwsRecordV3 rec = (PwsRecordV3)iter.next();
+            UUID uuid = rec.getLoadedUUID();
+            String key = (uuid != null) ? uuid.toString() : null;
+            if ((key == null) || recs.containsKey(key)) {
+                key = "#" + idx;
+            }
+            recs.put(key, rec);
+        }
+
+        try {
+            for (PwsJournal.Entry entry: entries) {
+                switch (entry.itsOp) {
+                case PwsJournal.OP_PUT: {
+                    recs.put(entry.itsUUID.toString(),
+                             new PwsRecordV3(this, entry.itsFields, false));
+                    break;
+                }
+                case PwsJournal.OP_REMOVE: {
+                    recs.remove(entry.itsUUID.toString());
+                    break;
+                }
+                case PwsJournal.OP_HEADER: {
+                    headerRecord = new PwsRecordV3(this, entry.itsFields,
+                                                   true);
+                    break;
+                }
+                default: {
+                    throw new IOException(
+                            "Unknown journal change: " + entry.itsOp);
+                }
+                }
+            }
+        } finally {
+            for (PwsJournal.Entry entry: entries) {
+                entry.clear();
+            }
+        }
+        replaceRecords(recs.values());
+    }
+
+    /**
+     * Resets the records known to be saved in the file and its journal to
+     * the current records
+     */
+    private void resetJournalRecords()
+    {
+        journalRecords = new IdentityHashMap<>(getRecordCount());
+        journalFullSave = false;
+        for (Iterator<PwsRecord> iter = getRecords(); iter.hasNext(); ) {
+            PwsRecordV3 rec = (PwsRecordV3)iter.next();
+            UUID uuid = rec.getLoadedUUID();
+            if (uuid != null) {
+                journalRecords.put(rec, uuid);
+            } else {
+                // A UUID added to the record must first be saved in full
+                journalFullSave = true;
+            }
+        }
+        headerRecord.resetModified();
+    }
+
+    /**
+     * Write the encrypted file to a stream as it is saved to the storage
+     */
+    private void writeFile(OutputStream out) throws IOException
+    {
+        outStream = new BufferedOutputStream(out, SAVE_BUFFER_SIZE);
         try {
             PwsFileHeaderV3 theHeaderV3 = getHeaderV3();
+            if (calibrateIter) {
+                theHeaderV3.setIter(
+                        Math.max(theHeaderV3.getIter(),
+                                 PwsStretchCalibrator.getDeviceIterations()));
+            }
             theHeaderV3.save(this);
 
             // Can only be created once the V3 header resets key info
@@ -240,28 +689,25 @@ public final class PwsFileV3 extends PwsFile
             }
 
             outStream.write(PwsRecordV3.EOF_BYTES_RAW);
-            outStream.write(hasher.doFinal());
-
-            outStream.close();
-
-            if (!saveStorage.save(baos.toByteArray(), true)) {
-                throw new IOException("Unable to save file");
-            }
-        } catch (IOException e) {
-            try {
-                if (outStream != null) {
-                    outStream.close();
-                }
-            } catch (Exception e2) {
-                // do nothing we're going to throw the original exception
-            }
-            throw e;
+            writtenHmac = hasher.doFinal();
+            outStream.write(writtenHmac);
+            outStream.flush();
         } finally {
             outStream = null;
         }
     }
 
 
+    /**
+     * Calibrate the key stretch iterations for the device when the file is
+     * next saved.  The iterations are only increased so a file created on a
+     * faster device keeps its strength.
+     */
+    public void calibrateStretchIterations()
+    {
+        calibrateIter = true;
+    }
+
     /**
      * Returns the major version number for the file.
      *
@@ -337,19 +783,104 @@ public final class PwsFileV3 extends PwsFile
         if ((buff.length == 0) || ((buff.length % getBlockSize()) != 0)) {
             throw new IllegalArgumentException("buff length");
         }
-        readBytes(buff);
-        if (Util.bytesAreEqual(buff, EOF_BYTES_RAW)) {
-            throw new EndOfFileException();
-        }
+        blockReader.read(buff, 0, buff.length, true);
+    }
 
-        byte[] decrypted;
+    /**
+     * Reads bytes from the file into a range of <code>buff</code> and
+     * decrypts them in place.  Unlike {@link #readDecryptedBytes(byte[])},
+     * the end of file marker is not checked as the bytes are expected to be
+     * the continuation of a field.
+     *
+     * @param buff   the buffer to read the bytes into.
+     * @param offset the offset in the buffer of the first byte.
+     * @param length the number of bytes; must be a multiple of the block
+     *               size.
+     * @throws IOException If a read error occurs or end of file is reached.
+     */
+    void readDecryptedBytes(byte[] buff, int offset, int length)
+            throws IOException
+    {
+        if ((length % getBlockSize()) != 0) {
+            throw new IllegalArgumentException("buff length");
+        }
         try {
-            decrypted = twofishCbc.processCBC(buff);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IOException("Error decrypting field");
+            blockReader.read(buff, offset, length, false);
+        } catch (EndOfFileException e) {
+            throw new IOException("Unexpected end of file", e);
+        }
+    }
+
+    /**
+     * Skips decrypted bytes which are the continuation of a field
+     *
+     * @param length the number of bytes; must be a multiple of the block
+     *               size.
+     * @throws IOException If a read error occurs or end of file is reached.
+     */
+    void skipDecryptedBytes(int length) throws IOException
+    {
+        if ((length % getBlockSize()) != 0) {
+            throw new IllegalArgumentException("skip length");
         }
-        Util.copyBytes(decrypted, buff);
+        blockReader.skip(length);
+    }
+
+    /**
+     * Starts capturing the encrypted blocks of a field which is not decoded
+     * when loading a lazy record.  Must be called just after the first block
+     * of the field is read.
+     *
+     * @param length the length of the field after its first block
+     */
+    void startEncryptedCapture(int length)
+    {
+        blockReader.startCapture(length);
+    }
+
+    /**
+     * Finishes capturing the encrypted blocks of a field
+     *
+     * @return The CBC vector for the field followed by its encrypted blocks
+     */
+    byte[] finishEncryptedCapture()
+    {
+        return blockReader.finishCapture();
+    }
+
+    /**
+     * Gets the key for the encrypted fields of lazily loaded records
+     *
+     * @return The key; null if the records are fully loaded.
+     */
+    PwsEncryptedRecords getEncryptedRecords()
+    {
+        return encryptedRecords;
+    }
+
+    /**
+     * Gets the HMAC of the fields read from the file.  The HMAC is computed
+     * as the fields are decrypted and is complete once the end of file
+     * marker has been reached.
+     *
+     * @return The HMAC of the field data.
+     * @throws IOException If a read error occurs.
+     */
+    byte[] getRecordsHmac() throws IOException
+    {
+        return blockReader.getHmac();
+    }
+
+    /**
+     * Reads the raw bytes which follow the end of file marker
+     *
+     * @param buff the buffer to read the bytes into.
+     * @throws EndOfFileException If end of file has been reached.
+     * @throws IOException        If a read error occurs.
+     */
+    void readTrailerBytes(byte[] buff) throws EndOfFileException, IOException
+    {
+        blockReader.readTrailer(buff);
     }
 
     /**
@@ -366,15 +897,40 @@ public final class PwsFileV3 extends PwsFile
             throw new IllegalArgumentException("buff length");
         }
 
-        byte[] temp;
+        byte[] temp = new byte[buff.length];
         try {
-            temp = twofishCbc.processCBC(buff);
+            twofishCbc.processCBC(buff, 0, buff.length, temp, 0);
         } catch (Exception e) {
             throw new IOException("Error writing encrypted field");
         }
         writeBytes(temp);
     }
 
+    /**
+     * Encrypts a range of <code>buff</code> in place and then writes it to
+     * the file.  The contents of the range are replaced by the encrypted
+     * bytes.
+     *
+     * @param buff   the data to be written.
+     * @param offset the offset of the first byte to write.
+     * @param length the number of bytes; must be a multiple of the block
+     *               size.
+     */
+    void writeEncryptedBytes(byte[] buff, int offset, int length)
+            throws IOException
+    {
+        if ((length == 0) || ((length % getBlockSize()) != 0)) {
+            throw new IllegalArgumentException("buff length");
+        }
+
+        try {
+            twofishCbc.processCBC(buff, offset, length, buff, offset);
+        } catch (Exception e) {
+            throw new IOException("Error writing encrypted field");
+        }
+        writeBytes(buff, offset, length);
+    }
+
     /**
      * @see org.pwsafe.lib.file.PwsFile#getBlockSize()
      */
@@ -385,27 +941,78 @@ public final class PwsFileV3 extends PwsFile
     }
 
     /**
+     * Get the header.  The header is kept decoded as its fields are also
+     * stored in the clear in the file, and it is cleared when the file is
+     * disposed.  A save updates the header in place for the saved file.
+     *
      * @return the headerV3
+     * @throws IllegalStateException If the file has been disposed
      */
-    private PwsFileHeaderV3 getHeaderV3()
+    private synchronized PwsFileHeaderV3 getHeaderV3()
     {
-        try {
-            return (PwsFileHeaderV3)sealedHeaderV3.getObject(getReadCipher());
-        } catch (IllegalBlockSizeException | IOException |
-                ClassNotFoundException | BadPaddingException e) {
-            throw new MemoryKeyException(e);
+        if (headerV3 == null) {
+            throw new IllegalStateException("File disposed");
         }
+        return headerV3;
     }
 
     /**
      * @param headerV3 the headerV3 to set
      */
-    private void setHeaderV3(PwsFileHeaderV3 headerV3)
+    private synchronized void setHeaderV3(PwsFileHeaderV3 headerV3)
     {
-        try {
-            sealedHeaderV3 = new SealedObject(headerV3, getWriteCipher());
-        } catch (IllegalBlockSizeException | IOException e) {
-            throw new MemoryKeyException(e);
+        this.headerV3 = headerV3;
+    }
+
+    /**
+     * A password encoding checked against the file
+     */
+    private static final class PasswordMatch
+    {
+        private final String itsEncoding;
+        private final byte[] itsPasswdBytes;
+        private byte[] itsStretchedPassword;
+
+        /**
+         * Constructor
+         */
+        private PasswordMatch(String encoding, byte[] passwdBytes)
+        {
+            itsEncoding = encoding;
+            itsPasswdBytes = passwdBytes;
+        }
+
+        /**
+         * Stretch the password and check whether it matches the file
+         *
+         * @return Whether the password matches; false if interrupted
+         */
+        private boolean check(PwsFileHeaderV3 headerV3, int iter)
+        {
+            byte[] stretch = Util.stretchPassphraseInterruptibly(
+                    itsPasswdBytes, headerV3.getSalt(), iter);
+            if (stretch == null) {
+                return false;
+            }
+            if (checkStretch(headerV3, stretch)) {
+                return true;
+            }
+            Util.clearArray(stretch);
+            return false;
+        }
+
+        /**
+         * Check whether the stretched password matches the file, keeping it
+         * if so
+         */
+        private boolean checkStretch(PwsFileHeaderV3 headerV3, byte[] stretch)
+        {
+            if (Util.bytesAreEqual(headerV3.getPassword(),
+                                   SHA256Pws.digest(stretch))) {
+                itsStretchedPassword = stretch;
+                return true;
+            }
+            return false;
         }
     }
 }
@@ -0,0 +1,368 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package org.pwsafe.lib.file;
+
+import org.pwsafe.lib.Log;
+import org.pwsafe.lib.UUID;
+import org.pwsafe.lib.Util;
+import org.pwsafe.lib.crypto.HmacPws;
+import org.pwsafe.lib.crypto.TwofishPws;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An append-only journal of the record changes made to a V3 file since it
+ * was last saved in full.  The journal is kept in a file next to the
+ * password file so a small change is saved without rewriting every record.
+ * <p/>
+ * The journal starts with an identifying tag followed by the commits of the
+ * changes.  Each commit is the length of its encrypted data, a random IV,
+ * the Twofish-CBC encrypted changes, and an HMAC-SHA256 of the previous
+ * commit's HMAC with the length, IV, and encrypted data.  The keys are
+ * derived from the record and HMAC keys of the file, and the HMAC chain
+ * starts from the HMAC at the end of the file, so a journal is only valid
+ * for the exact file it was written against.  A partially written commit
+ * and anything after it are ignored when read and are overwritten by the
+ * next commit.
+ */
+final class PwsJournal
+{
+    private static final Log LOG = Log.getInstance(Objects.requireNonNull(
+            PwsJournal.class.getPackage()).getName());
+
+    /**
+     * Change which adds or replaces a record
+     */
+    static final int OP_PUT = 1;
+
+    /**
+     * Change which removes a record
+     */
+    static final int OP_REMOVE = 2;
+
+    /**
+     * Change which replaces the header record
+     */
+    static final int OP_HEADER = 3;
+
+    private static final byte[] ID_STRING = "PWSJ".getBytes();
+    private static final byte[] ENC_KEY_LABEL = "PWSJ-KEY".getBytes();
+    private static final byte[] MAC_KEY_LABEL = "PWSJ-MAC".getBytes();
+    private static final int BLOCK_SIZE = TwofishPws.BLOCK_SIZE;
+    private static final int LEN_LENGTH = 4;
+    private static final int MAC_LENGTH = 32;
+    private static final int UUID_LENGTH = 16;
+    private static final int OP_HEADER_LENGTH = 1 + UUID_LENGTH + 4;
+
+    /**
+     * A change in the journal
+     */
+    static final class Entry
+    {
+        final int itsOp;
+        final UUID itsUUID;
+        final byte[] itsFields;
+
+        /**
+         * Constructor
+         *
+         * @param op     the change
+         * @param uuid   the record's UUID; null for the header
+         * @param fields the serialized fields of the record; null for a
+         *               removal
+         */
+        Entry(int op, UUID uuid, byte[] fields)
+        {
+            itsOp = op;
+            itsUUID = uuid;
+            itsFields = fields;
+        }
+
+        /**
+         * Clear the fields of the change
+         */
+        void clear()
+        {
+            if (itsFields != null) {
+                Arrays.fill(itsFields, (byte)0);
+            }
+        }
+    }
+
+    private final File itsFile;
+    private final byte[] itsEncKey;
+    private final byte[] itsMacKey;
+    private byte[] itsChain;
+    private long itsLength = 0;
+
+    /**
+     * Constructor
+     *
+     * @param file      the journal file
+     * @param recordKey the record key of the password file
+     * @param hmacKey   the HMAC key of the password file
+     * @param fileHmac  the HMAC at the end of the password file
+     */
+    PwsJournal(File file, byte[] recordKey, byte[] hmacKey, byte[] fileHmac)
+            throws IOException
+    {
+        itsFile = file;
+        itsEncKey = deriveKey(recordKey, ENC_KEY_LABEL);
+        itsMacKey = deriveKey(hmacKey, MAC_KEY_LABEL);
+        itsChain = fileHmac.clone();
+    }
+
+    /**
+     * Get the journal file
+     */
+    File getFile()
+    {
+        return itsFile;
+    }
+
+    /**
+     * Get the length of the valid commits in the journal
+     */
+    long size()
+    {
+        return itsLength;
+    }
+
+    /**
+     * Read the changes from the valid commits in the journal.  Reading
+     * stops at the first commit which is incomplete or doesn't match its
+     * HMAC.
+     *
+     * @return The changes in the order they were made
+     */
+    List<Entry> read() throws IOException
+    {
+        itsLength = 0;
+        if (!itsFile.isFile()) {
+            return Collections.emptyList();
+        }
+
+        byte[] journal = new byte[(int)Math.min(itsFile.length(),
+                                                Integer.MAX_VALUE)];
+        try (FileInputStream is = new FileInputStream(itsFile)) {
+            int pos = 0;
+            while (pos < journal.length) {
+                int count = is.read(journal, pos, journal.length - pos);
+                if (count < 0) {
+                    break;
+                }
+                pos += count;
+            }
+            if (pos < journal.length) {
+                journal = Arrays.copyOf(journal, pos);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        if ((journal.length < ID_STRING.length) ||
+            !Util.bytesAreEqual(ID_STRING,
+                                Util.getBytes(journal, 0, ID_STRING.length))) {
+            return entries;
+        }
+
+        int pos = ID_STRING.length;
+        while ((journal.length - pos) >= (LEN_LENGTH + BLOCK_SIZE)) {
+            int ctLen = Util.getIntFromByteArray(journal, pos);
+            int commitLen = LEN_LENGTH + BLOCK_SIZE + ctLen + MAC_LENGTH;
+            if ((ctLen <= 0) || ((ctLen % BLOCK_SIZE) != 0) ||
+                (commitLen > (journal.length - pos))) {
+                break;
+            }
+
+            byte[] mac = computeMac(journal, pos, commitLen - MAC_LENGTH);
+            if (!Util.bytesAreEqual(
+                    mac, Util.getBytes(journal, pos + commitLen - MAC_LENGTH,
+                                       MAC_LENGTH))) {
+                LOG.warn("Journal commit does not match: " + itsFile);
+                break;
+            }
+
+            byte[] iv = Util.getBytes(journal, pos + LEN_LENGTH, BLOCK_SIZE);
+            byte[] plain = new byte[ctLen];
+            new TwofishPws(itsEncKey, false, iv).processCBC(
+                    journal, pos + LEN_LENGTH + BLOCK_SIZE, ctLen, plain, 0);
+            try {
+                entries.addAll(decodeEntries(plain));
+            } catch (IOException e) {
+                LOG.error("Journal commit is invalid: " + itsFile, e);
+                break;
+            } finally {
+                Arrays.fill(plain, (byte)0);
+            }
+
+            itsChain = mac;
+            pos += commitLen;
+            itsLength = pos;
+        }
+        return entries;
+    }
+
+    /**
+     * Append a commit of changes to the journal.  The commit is synced to
+     * the storage device before returning.
+     */
+    void append(List<Entry> entries) throws IOException
+    {
+        int plainLen = 4;
+        for (Entry entry: entries) {
+            plainLen += OP_HEADER_LENGTH +
+                        ((entry.itsFields != null) ?
+                         entry.itsFields.length : 0);
+        }
+        int ctLen = ((plainLen + BLOCK_SIZE - 1) / BLOCK_SIZE) * BLOCK_SIZE;
+
+        byte[] commit = new byte[LEN_LENGTH + BLOCK_SIZE + ctLen + MAC_LENGTH];
+        Util.putIntToByteArray(commit, ctLen, 0);
+        byte[] iv = new byte[BLOCK_SIZE];
+        Util.newRandBytes(iv);
+        System.arraycopy(iv, 0, commit, LEN_LENGTH, BLOCK_SIZE);
+
+        // The changes are encoded in place and then encrypted in place
+        final int ctPos = LEN_LENGTH + BLOCK_SIZE;
+        Util.putIntToByteArray(commit, plainLen, ctPos);
+        int pos = ctPos + 4;
+        for (Entry entry: entries) {
+            commit[pos] = (byte)entry.itsOp;
+            if (entry.itsUUID != null) {
+                System.arraycopy(entry.itsUUID.getBytes(), 0,
+                                 commit, pos + 1, UUID_LENGTH);
+            }
+            int fieldsLen = 0;
+            if (entry.itsFields != null) {
+                fieldsLen = entry.itsFields.length;
+                System.arraycopy(entry.itsFields, 0, commit,
+                                 pos + OP_HEADER_LENGTH, fieldsLen);
+            }
+            Util.putIntToByteArray(commit, fieldsLen, pos + 1 + UUID_LENGTH);
+            pos += OP_HEADER_LENGTH + fieldsLen;
+        }
+        new TwofishPws(itsEncKey, true, iv).processCBC(commit, ctPos, ctLen,
+                                                       commit, ctPos);
+
+        byte[] mac = computeMac(commit, 0, commit.length - MAC_LENGTH);
+        System.arraycopy(mac, 0, commit, commit.length - MAC_LENGTH,
+                         MAC_LENGTH);
+
+        // The length is only updated once the commit is synced.  After a
+        // failure, the earlier commits are kept and a partially written
+        // commit is dropped by the next one.
+        long length = itsLength;
+        try (RandomAccessFile raf = new RandomAccessFile(itsFile, "rw")) {
+            if (length == 0) {
+                raf.setLength(0);
+                raf.write(ID_STRING);
+                length = ID_STRING.length;
+            } else {
+                // Drop an invalid tail from an interrupted commit
+                raf.setLength(length);
+                raf.seek(length);
+            }
+            raf.write(commit);
+            raf.getFD().sync();
+        }
+        itsLength = length + commit.length;
+        itsChain = mac;
+    }
+
+    /**
+     * Delete the journal
+     */
+    void delete()
+    {
+        if (itsFile.exists() && !itsFile.delete()) {
+            LOG.error("Error deleting journal: " + itsFile);
+        }
+        itsLength = 0;
+    }
+
+    /**
+     * Clear the keys of the journal
+     */
+    void dispose()
+    {
+        Arrays.fill(itsEncKey, (byte)0);
+        Arrays.fill(itsMacKey, (byte)0);
+    }
+
+    /**
+     * Decode the changes from the decrypted data of a commit
+     */
+    private static List<Entry> decodeEntries(byte[] plain) throws IOException
+    {
+        List<Entry> entries = new ArrayList<>();
+        int plainLen = Util.getIntFromByteArray(plain, 0);
+        if ((plainLen < 4) || (plainLen > plain.length)) {
+            throw new IOException("Invalid journal commit length");
+        }
+        int pos = 4;
+        while (pos < plainLen) {
+            if ((pos + OP_HEADER_LENGTH) > plainLen) {
+                throw new IOException("Invalid journal change");
+            }
+            int op = plain[pos] & 0xff;
+            int fieldsLen = Util.getIntFromByteArray(plain,
+                                                     pos + 1 + UUID_LENGTH);
+            int fieldsPos = pos + OP_HEADER_LENGTH;
+            if ((fieldsLen < 0) || (fieldsLen > (plainLen - fieldsPos))) {
+                throw new IOException("Invalid journal change length");
+            }
+            UUID uuid = (op == OP_HEADER) ? null : new UUID(
+                    Util.getBytes(plain, pos + 1, UUID_LENGTH));
+            byte[] fields = (op == OP_REMOVE) ? null :
+                    Util.getBytes(plain, fieldsPos, fieldsLen);
+            entries.add(new Entry(op, uuid, fields));
+            pos = fieldsPos + fieldsLen;
+        }
+        return entries;
+    }
+
+    /**
+     * Compute the HMAC of a commit chained from the previous commit
+     */
+    private byte[] computeMac(byte[] buf, int offset, int length)
+            throws IOException
+    {
+        try {
+            HmacPws mac = new HmacPws(itsMacKey);
+            mac.digest(itsChain);
+            mac.digest(buf, offset, length);
+            return mac.doFinal();
+        } catch (InvalidKeyException e) {
+            throw new IOException("Invalid journal key", e);
+        }
+    }
+
+    /**
+     * Derive a journal key from a key of the password file
+     */
+    private static byte[] deriveKey(byte[] fileKey, byte[] label)
+            throws IOException
+    {
+        try {
+            HmacPws mac = new HmacPws(fileKey);
+            mac.digest(label);
+            return mac.doFinal();
+        } catch (InvalidKeyException e) {
+            throw new IOException("Invalid journal key", e);
+        }
+    }
+}
@@ -20,9 +20,7 @@ import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Objects;
-import java.util.TreeMap;
 
 /**
  * This abstract class implements the common features of PasswordSafe records.
@@ -49,7 +47,13 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
 
     private boolean modified = false;
     private boolean isLoaded = false;
-    protected final Map<Integer, PwsField> attributes = new TreeMap<>();
+
+    /**
+     * The fields of the record.  Once the record is loaded, the fields are
+     * only used with the record locked as deferred fields may be decoded
+     * into them while other fields are read.
+     */
+    protected final PwsFieldArray attributes = new PwsFieldArray();
     private final Object[] ValidTypes;
 
     protected boolean ignoreFieldTypes = false;
@@ -320,6 +324,24 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
         return false;
     }
 
+    /**
+     * Provide subclasses a means to decode fields which were not loaded
+     * with the record.  Called before the fields are accessed.  The decoded
+     * fields must be put in the attributes with the record locked.
+     */
+    protected void loadDeferredFields()
+    {
+    }
+
+    /**
+     * Provide subclasses a means to indicate a field type may not yet be
+     * decoded.  Getting such a field first decodes the deferred fields.
+     */
+    protected boolean isDeferredField(int type)
+    {
+        return false;
+    }
+
     // *************************************************************************
     // * Class methods
     // *************************************************************************
@@ -333,7 +355,12 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
      */
     public final PwsField getField(int aType)
     {
-        return getField(Integer.valueOf(aType));
+        if (isDeferredField(aType)) {
+            loadDeferredFields();
+        }
+        synchronized (this) {
+            return attributes.get(aType);
+        }
     }
 
     /**
@@ -345,7 +372,39 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
      */
     protected final PwsField getField(Integer aType)
     {
-        return attributes.get(aType);
+        if (isDeferredField(aType)) {
+            loadDeferredFields();
+        }
+        synchronized (this) {
+            return attributes.get(aType);
+        }
+    }
+
+    /**
+     * Gets the number of fields stored in the record
+     *
+     * @return The number of fields
+     */
+    protected final int getNumFields()
+    {
+        loadDeferredFields();
+        synchronized (this) {
+            return attributes.size();
+        }
+    }
+
+    /**
+     * Gets a stored field by its index in ascending order of the field
+     * types.  Used to iterate over the fields without allocations.
+     *
+     * @param idx the index between zero and getNumFields()
+     * @return The field at the index
+     */
+    protected final PwsField getFieldAt(int idx)
+    {
+        synchronized (this) {
+            return attributes.fieldAt(idx);
+        }
     }
 
     /**
@@ -358,7 +417,10 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
      */
     protected Iterator<Integer> getFields()
     {
-        return attributes.keySet().iterator();
+        loadDeferredFields();
+        synchronized (this) {
+            return attributes.types();
+        }
     }
 
     /**
@@ -423,10 +485,11 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
     {
         int theType;
 
+        loadDeferredFields();
         theType = value.getType();
 
         if (ignoreFieldTypes) {
-            attributes.put(theType, value);
+            putAttribute(theType, value);
             setModified();
             return;
         }
@@ -437,7 +500,7 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
                 Class<? extends PwsField> cl = value.getClass();
 
                 if (cl == (((Object[])ValidTypes[theType])[2])) {
-                    attributes.put(theType, value);
+                    putAttribute(theType, value);
                     setModified();
                     return;
                 }
@@ -453,7 +516,7 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
                 Class<? extends PwsField> cl = value.getClass();
 
                 if (cl == (((Object[])ValidType)[2])) {
-                    attributes.put(theType, value);
+                    putAttribute(theType, value);
                     setModified();
                     return;
                 }
@@ -464,7 +527,7 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
             LOG.warn("Adding unknown field of type " + theType +
                      ", class " + value.getClass() +
                      " - maybe a new version is needed?");
-            attributes.put(theType, value);
+            putAttribute(theType, value);
             setModified();
         } else {
             throw new IllegalArgumentException(
@@ -479,12 +542,24 @@ public abstract class PwsRecord implements Comparable<Object>, Serializable
      */
     public void removeField(int type)
     {
-        PwsField field = attributes.remove(type);
+        loadDeferredFields();
+        PwsField field;
+        synchronized (this) {
+            field = attributes.remove(type);
+        }
         if (field != null) {
             setModified();
         }
     }
 
+    /**
+     * Puts a field in the attributes with the record locked
+     */
+    private synchronized void putAttribute(int type, PwsField value)
+    {
+        attributes.put(type, value);
+    }
+
     /**
      * Sets the modified flag on this record, and also on the file this record
      * belongs to.
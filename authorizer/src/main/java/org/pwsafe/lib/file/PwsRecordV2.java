@@ -303,14 +303,8 @@ public class PwsRecordV2 extends PwsRecord
     protected void saveRecord(PwsFile file)
             throws IOException
     {
-        for (Iterator<?> iter = getFields(); iter.hasNext(); ) {
-            int type;
-            PwsField value;
-
-            type = (Integer)iter.next();
-            value = getField(type);
-
-            writeField(file, value);
+        for (int i = 0, numFields = getNumFields(); i < numFields; ++i) {
+            writeField(file, getFieldAt(i));
         }
         writeField(file, new PwsStringField(END_OF_RECORD, ""));
     }
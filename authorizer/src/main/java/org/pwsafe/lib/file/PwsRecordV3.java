@@ -17,6 +17,7 @@ import org.pwsafe.lib.exception.RecordLoadException;
 
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -306,6 +307,32 @@ public class PwsRecordV3 extends PwsRecord
      */
     public static final int END_OF_RECORD = 255;
 
+    /**
+     * The password was not checked for an alias or shortcut reference when
+     * the record was loaded, or it has changed since
+     */
+    public static final int PASSWD_REF_UNKNOWN = 0;
+
+    /**
+     * The password is not an alias or shortcut reference
+     */
+    public static final int PASSWD_REF_NONE = 1;
+
+    /**
+     * The password has the form of an alias reference, [[uuid]]
+     */
+    public static final int PASSWD_REF_ALIAS = 2;
+
+    /**
+     * The password has the form of a shortcut reference, [~uuid~]
+     */
+    public static final int PASSWD_REF_SHORTCUT = 3;
+
+    /**
+     * Length of an alias or shortcut reference password
+     */
+    private static final int PASSWD_REF_LENGTH = 36;
+
     /**
      * All the valid type codes.
      */
@@ -391,6 +418,22 @@ public class PwsRecordV3 extends PwsRecord
                          "FIDO_HMAC_SECRET", PwsStringUnicodeField.class},
             };
 
+    /**
+     * For a lazily loaded record, the key for the encrypted fields which are
+     * decoded when first used; null once all fields are loaded
+     */
+    private transient volatile PwsEncryptedRecords deferredRecords;
+    private transient PwsFileV3 deferredFile;
+    private transient byte[][] deferredFields;
+
+    /**
+     * Whether the password is an alias or shortcut reference as detected
+     * from its plaintext when loaded.  Not explicitly initialized, as it is
+     * set when the record is loaded by the superclass constructor, and the
+     * default is PASSWD_REF_UNKNOWN.
+     */
+    private transient int passwdRefHint;
+
     /**
      * Create a new record with all mandatory fields given their default value.
      */
@@ -446,6 +489,49 @@ public class PwsRecordV3 extends PwsRecord
         super(file, VALID_TYPES, ignoreFieldTypes);
     }
 
+    /**
+     * Create a record from the fields serialized by
+     * {@link #getJournalFields()}.
+     *
+     * @param file     the file which owns the record.
+     * @param fields   the serialized fields.
+     * @param isHeader whether the record is the header record.
+     * @throws IOException If the fields can't be decoded.
+     */
+    PwsRecordV3(PwsFileV3 file, byte[] fields, boolean isHeader)
+            throws IOException
+    {
+        super(VALID_TYPES, isHeader);
+
+        int pos = 0;
+        while (pos < fields.length) {
+            if ((fields.length - pos) < 5) {
+                throw new IOException("Invalid journal field");
+            }
+            int length = Util.getIntFromByteArray(fields, pos);
+            int type = fields[pos + 4] & 0x000000ff;
+            if ((length < 0) || (length > (fields.length - pos - 5))) {
+                throw new IOException("Invalid journal field length");
+            }
+            byte[] data = Arrays.copyOfRange(fields, pos + 5,
+                                             pos + 5 + length);
+            try {
+                if (!isHeader && (type == PASSWORD)) {
+                    passwdRefHint = getPasswdRefHint(data);
+                }
+                attributes.put(type,
+                               isHeader ? new PwsUnknownField(type, data) :
+                               createField(type, data, file));
+            } finally {
+                if (!isHeader && (type == PASSWORD)) {
+                    Arrays.fill(data, (byte)0);
+                }
+            }
+            pos += 5 + length;
+        }
+        setLoaded();
+    }
+
 
     /**
      * The V3 format allows and requires the ability to add formerly unknown
@@ -459,6 +545,37 @@ public class PwsRecordV3 extends PwsRecord
         return true;
     }
 
+    @Override
+    public void setField(PwsField value)
+    {
+        super.setField(value);
+        if (!ignoreFieldTypes && (value.getType() == PASSWORD)) {
+            passwdRefHint = PASSWD_REF_UNKNOWN;
+        }
+    }
+
+    @Override
+    public void removeField(int type)
+    {
+        super.removeField(type);
+        if (!ignoreFieldTypes && (type == PASSWORD)) {
+            passwdRefHint = PASSWD_REF_UNKNOWN;
+        }
+    }
+
+    /**
+     * Get whether the password is an alias or shortcut reference as detected
+     * from its plaintext when the record was loaded.  The reference in a
+     * password with the form of a reference still needs to be checked, but
+     * a password which doesn't have the form needs not be unsealed.
+     *
+     * @return One of the PASSWD_REF constants
+     */
+    public final int getPasswdRefHint()
+    {
+        return passwdRefHint;
+    }
+
     /**
      * Compares this record to another returning a value that is less than zero
      * if this record is "less than" <code>other</code>, zero if they are
@@ -510,13 +627,17 @@ public class PwsRecordV3 extends PwsRecord
     @Override
     protected boolean isValid()
     {
-        PwsField idField = getField(V3_ID_STRING);
-        return idField == null;
+        return !isHeaderRecord();
     }
 
     protected boolean isHeaderRecord()
     {
-        PwsField idField = getField(V3_ID_STRING);
+        // The version field is always loaded, so a lazy record isn't decoded
+        // just for the check
+        PwsField idField;
+        synchronized (this) {
+            idField = attributes.get(V3_ID_STRING);
+        }
         return idField != null;
     }
 
@@ -524,15 +645,34 @@ public class PwsRecordV3 extends PwsRecord
 
     protected static class ItemV3 extends Item
     {
+        /**
+         * The encrypted blocks of a field which is not decoded when loading
+         * a lazy record; null if not kept
+         */
+        private byte[] encrypted;
+
         public ItemV3(PwsFileV3 file) throws EndOfFileException, IOException
+        {
+            this(file, false);
+        }
+
+        /**
+         * Reads a field from the file
+         *
+         * @param file      the file to read from
+         * @param skipLazy  whether to keep the encrypted blocks of fields
+         *                  which are not decoded when loading a lazy record
+         */
+        ItemV3(PwsFileV3 file, boolean skipLazy)
+                throws EndOfFileException, IOException
         {
             super();
             try {
                 rawData = file.readBlock();
             } catch (EndOfFileException eofe) {
                 data = new byte[32]; // to hold closing HMAC
-                file.readBytes(data);
-                byte[] hash = file.hasher.doFinal();
+                file.readTrailerBytes(data);
+                byte[] hash = file.getRecordsHmac();
                 if (!Util.bytesAreEqual(data, hash)) {
                     LOG.error("HMAC record did not match. File may have been " +
                               "tampered");
@@ -544,47 +684,79 @@ public class PwsRecordV3 extends PwsRecord
 
             length = Util.getIntFromByteArray(rawData, 0);
             type = rawData[4] & 0x000000ff; // rest of header is now random data
+            final int blockSize = file.getBlockSize();
+            boolean isDeferred = skipLazy && !isLoadedType(type);
+            if (isDeferred) {
+                int bytesToSkip = 0;
+                if (length > 11) {
+                    bytesToSkip = ((length - 11 + blockSize - 1) /
+                                   blockSize) * blockSize;
+                }
+                try {
+                    file.startEncryptedCapture(bytesToSkip);
+                } catch (OutOfMemoryError e) {
+                    throw new IOException(
+                            "Out of memory.  Record length too long: " +
+                            length);
+                }
+                if (!isPasswdRefCandidate(type, length, rawData)) {
+                    data = new byte[0];
+                    Arrays.fill(rawData, (byte)0);
+                    file.skipDecryptedBytes(bytesToSkip);
+                    encrypted = file.finishEncryptedCapture();
+                    return;
+                }
+            }
             try {
                 data = new byte[length];
             } catch (OutOfMemoryError e) {
                 throw new IOException(
                         "Out of memory.  Record length too long: " + length);
             }
-            byte[] remainingDataInRecord = Util.getBytes(rawData, 5, 11);
             if (length <= 11) {
-                System.arraycopy(remainingDataInRecord, 0, data, 0, length);
+                System.arraycopy(rawData, 5, data, 0, length);
             } else {
+                System.arraycopy(rawData, 5, data, 0, 11);
+
+                // Decrypt the whole blocks of the field directly into the
+                // data and only the remaining partial block separately
                 int bytesToRead = length - 11;
-                final int blockSize = file.getBlockSize();
-                int blocksToRead = bytesToRead / blockSize;
-
-                System.arraycopy(remainingDataInRecord, 0, data, 0,
-                                 remainingDataInRecord.length);
-                int pos = remainingDataInRecord.length;
-
-                byte[] nextBlock = new byte[blockSize];
-                int nextBlockLen = nextBlock.length;
-                for (int i = 0; i < blocksToRead; i++, pos += nextBlockLen) {
-                    file.readDecryptedBytes(nextBlock);
-                    System.arraycopy(nextBlock, 0, data, pos, nextBlockLen);
+                int tailLen = bytesToRead % blockSize;
+                int bodyLen = bytesToRead - tailLen;
+                if (bodyLen > 0) {
+                    file.readDecryptedBytes(data, 11, bodyLen);
                 }
-
-                // if blocksToRead doesn't fit neatly into current block
-                // size, add an extra block for the remaining bytes
-                if ((bytesToRead % blockSize) != 0) {
-                    file.readDecryptedBytes(nextBlock);
-                    int bytesRead = pos - remainingDataInRecord.length;
-                    nextBlockLen = bytesToRead - bytesRead;
-                    System.arraycopy(nextBlock, 0, data, pos, nextBlockLen);
+                if (tailLen != 0) {
+                    byte[] tailBlock = new byte[blockSize];
+                    file.readDecryptedBytes(tailBlock, 0, blockSize);
+                    System.arraycopy(tailBlock, 0, data, 11 + bodyLen,
+                                     tailLen);
+                    Arrays.fill(tailBlock, (byte)0);
                 }
             }
-            byte[] dataToHash = data;
-            file.hasher.digest(dataToHash);
+            if (isDeferred) {
+                encrypted = file.finishEncryptedCapture();
+            }
+        }
+
+        /**
+         * Gets the encrypted blocks of a field which is not decoded when
+         * loading a lazy record
+         *
+         * @return The CBC vector for the field followed by its encrypted
+         * blocks; null if not kept
+         */
+        byte[] getEncryptedData()
+        {
+            return encrypted;
         }
     }
 
     /**
      * Initialises this record by reading its data from <code>file</code>.
+     * If the file loads its records lazily, the secret fields are not
+     * decoded until they are used.  Only their encrypted blocks are kept,
+     * and they are then decoded by {@link #loadDeferredFields()}.
      *
      * @param file the file to read the data from.
      */
@@ -592,102 +764,46 @@ public class PwsRecordV3 extends PwsRecord
     protected void loadRecord(PwsFile file)
             throws EndOfFileException, RecordLoadException
     {
+        PwsFileV3 fileV3 = (PwsFileV3)file;
+        PwsEncryptedRecords encRecords =
+                ignoreFieldTypes ? null : fileV3.getEncryptedRecords();
+        ArrayList<byte[]> encFields = null;
+
         ArrayList<Throwable> itemErrors = null;
         for (; ; ) {
             try {
-                Item item = new ItemV3((PwsFileV3)file);
+                ItemV3 item = new ItemV3(fileV3, encRecords != null);
 
                 if (item.getType() == END_OF_RECORD) {
                     break; // out of the for loop
                 }
 
-                PwsField itemVal;
+                byte[] encrypted = item.getEncryptedData();
+                if (encrypted != null) {
+                    if (encFields == null) {
+                        encFields = new ArrayList<>();
+                    }
+                    encFields.add(encrypted);
+                }
+
                 if (ignoreFieldTypes) {
                     // header record has no valid types...
-                    itemVal = new PwsUnknownField(item.getType(),
-                                                  item.getByteData());
+                    PwsField itemVal = new PwsUnknownField(item.getType(),
+                                                           item.getByteData());
                     attributes.put(item.getType(), itemVal);
-                } else {
-
-                    switch (item.getType()) {
-                    case V3_ID_STRING:
-                        itemVal = new PwsVersionField(item.getType(),
-                                                      item.getByteData());
-                        break;
-
-                    case UUID:
-                        itemVal = new PwsUUIDField(item.getType(),
-                                                   item.getByteData());
-                        break;
-
-                    case GROUP:
-                    case TITLE:
-                    case USERNAME:
-                    case NOTES:
-                    case PASSWORD_POLICY:
-                    case PASSWORD_HISTORY:
-                    case URL:
-                    case AUTOTYPE:
-                    case RUN_COMMAND:
-                    case EMAIL:
-                    case OWN_PASSWORD_SYMBOLS:
-                    case ICON:
-                    case OTP:
-                    case FIDO_RP_ID:
-                    case FIDO_RP_NAME:
-                    case FIDO_USER_HANDLE:
-                    case FIDO_USER_NAME:
-                    case FIDO_USER_DISPLAYNAME:
-                    case FIDO_U2F_RP_ID:
-                    case FIDO_KEY_PAIR:
-                    case FIDO_HMAC_SECRET:
-                    case PASSWORD_POLICY_NAME:
-                        itemVal = new PwsStringUnicodeField(item.getType(),
-                                                            item.getByteData());
-                        break;
-
-                    case PASSWORD:
-                        itemVal = new PwsPasswdUnicodeField(item.getType(),
-                                                            item.getByteData(),
-                                                            file);
+                } else if (item.getType() == PASSWORD) {
+                    // Detect a reference from the plaintext before it is
+                    // sealed.  A lazy record only kept the plaintext of a
+                    // possible reference.
+                    int hint = getPasswdRefHint(item.getByteData());
+                    if (encrypted == null) {
+                        setField(createField(item, file));
+                    } else {
                         item.clear();
-                        break;
-
-                    case CREATION_TIME:
-                    case PASSWORD_MOD_TIME:
-                    case LAST_ACCESS_TIME:
-                    case LAST_MOD_TIME:
-                    case PASSWORD_LIFETIME:
-                        itemVal = new PwsTimeField(item.getType(),
-                                                   item.getByteData());
-                        break;
-
-                    case AUTOTYPE_DELIMITER:
-                    case AUTOTYPE_RETURNSUFFIX:
-                    case PASSWORD_EXPIRY_INTERVAL:
-                    case ENTRY_KEYBOARD_SHORTCUT:
-                    case FIDO_KEY_USE_COUNTER:
-                        itemVal = new PwsIntegerField(item.getType(),
-                                                      item.getByteData());
-                        break;
-
-                    case DOUBLE_CLICK_ACTION:
-                    case SHIFT_DOUBLE_CLICK_ACTION:
-                        itemVal = new PwsShortField(item.getType(),
-                                                    item.getByteData());
-                        break;
-
-                    case PROTECTED_ENTRY:
-                        itemVal = new PwsByteField(item.getType(),
-                                                   item.getByteData());
-                        break;
-
-                    default:
-                        itemVal = new PwsUnknownField(item.getType(),
-                                                      item.getByteData());
-                        break;
                     }
-                    setField(itemVal);
+                    passwdRefHint = hint;
+                } else if (encrypted == null) {
+                    setField(createField(item, file));
                 }
             } catch (EndOfFileException eof) {
                 if (itemErrors != null) {
@@ -705,6 +821,246 @@ public class PwsRecordV3 extends PwsRecord
         if (itemErrors != null) {
             throw new RecordLoadException(this, itemErrors);
         }
+
+        if (encFields != null) {
+            deferredFile = fileV3;
+            deferredFields = encFields.toArray(new byte[0][]);
+            encRecords.addPending();
+            deferredRecords = encRecords;
+        }
+    }
+
+    /**
+     * Decode the fields of a lazily loaded record from their encrypted
+     * blocks.  The encrypted blocks are released once decoded.
+     */
+    @Override
+    protected final void loadDeferredFields()
+    {
+        if (deferredRecords == null) {
+            return;
+        }
+        synchronized (this) {
+            PwsEncryptedRecords encRecords = deferredRecords;
+            if (encRecords == null) {
+                return;
+            }
+
+            // All fields are decrypted first so the record remains lazy if
+            // the key has been cleared
+            byte[][] plainFields = new byte[deferredFields.length][];
+            try {
+                for (int i = 0; i < plainFields.length; ++i) {
+                    plainFields[i] = encRecords.decrypt(deferredFields[i]);
+                }
+                for (byte[] plain: plainFields) {
+                    loadDeferredField(plain);
+                }
+            } finally {
+                for (byte[] plain: plainFields) {
+                    if (plain != null) {
+                        Arrays.fill(plain, (byte)0);
+                    }
+                }
+            }
+
+            deferredRecords = null;
+            deferredFile = null;
+            deferredFields = null;
+            encRecords.removePending();
+        }
+    }
+
+    /**
+     * Decode a field of a lazily loaded record from its decrypted blocks
+     */
+    private void loadDeferredField(byte[] plain)
+    {
+        if (plain.length < 5) {
+            LOG.error("Invalid deferred field");
+            return;
+        }
+        int length = Util.getIntFromByteArray(plain, 0);
+        int type = plain[4] & 0x000000ff;
+        if ((length < 0) || (length > (plain.length - 5))) {
+            LOG.error("Invalid length of deferred field " + type + ": " +
+                      length);
+            return;
+        }
+
+        byte[] data = Arrays.copyOfRange(plain, 5, 5 + length);
+        try {
+            attributes.put(type, createField(type, data, deferredFile));
+        } catch (Exception e) {
+            // Keep the raw field so it is saved unchanged
+            LOG.error("Error decoding field " + type + ": " + e);
+            attributes.put(type, new PwsUnknownField(type, data.clone()));
+        } finally {
+            Arrays.fill(data, (byte)0);
+        }
+    }
+
+    /**
+     * Whether a field type may not yet be decoded for a lazy record
+     */
+    @Override
+    protected final boolean isDeferredField(int type)
+    {
+        return (deferredRecords != null) && !isLoadedType(type);
+    }
+
+    /**
+     * Whether a field type is decoded when a lazy record is loaded.  Only
+     * the secret fields are deferred as the others are used to list,
+     * search, and check the expiration of every record when a file is
+     * opened.
+     */
+    private static boolean isLoadedType(int type)
+    {
+        switch (type) {
+        case PASSWORD:
+        case PASSWORD_HISTORY:
+        case OTP:
+        case FIDO_KEY_PAIR:
+        case FIDO_HMAC_SECRET: {
+            return false;
+        }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a field, from its first block, is a password with the length
+     * and start of an alias or shortcut reference
+     */
+    private static boolean isPasswdRefCandidate(int type, int length,
+                                                byte[] firstBlock)
+    {
+        return (type == PASSWORD) && (length == PASSWD_REF_LENGTH) &&
+               (firstBlock[5] == '[') &&
+               ((firstBlock[6] == '[') || (firstBlock[6] == '~'));
+    }
+
+    /**
+     * Detect whether the UTF-8 plaintext of a password has the form of an
+     * alias or shortcut reference
+     */
+    private static int getPasswdRefHint(byte[] passwd)
+    {
+        if ((passwd.length != PASSWD_REF_LENGTH) || (passwd[0] != '[')) {
+            return PASSWD_REF_NONE;
+        }
+        final int last = PASSWD_REF_LENGTH - 1;
+        int hint;
+        if ((passwd[1] == '[') &&
+            (passwd[last - 1] == ']') && (passwd[last] == ']')) {
+            hint = PASSWD_REF_ALIAS;
+        } else if ((passwd[1] == '~') &&
+                   (passwd[last - 1] == '~') && (passwd[last] == ']')) {
+            hint = PASSWD_REF_SHORTCUT;
+        } else {
+            return PASSWD_REF_NONE;
+        }
+        for (int i = 2; i < (last - 1); ++i) {
+            byte b = passwd[i];
+            if (!(((b >= '0') && (b <= '9')) ||
+                  ((b >= 'a') && (b <= 'f')) ||
+                  ((b >= 'A') && (b <= 'F')))) {
+                return PASSWD_REF_NONE;
+            }
+        }
+        return hint;
+    }
+
+    /**
+     * Create a field from an item read from the file
+     */
+    private static PwsField createField(Item item, PwsFile file)
+            throws UnsupportedEncodingException
+    {
+        PwsField itemVal = createField(item.getType(), item.getByteData(),
+                                       file);
+        if (item.getType() == PASSWORD) {
+            item.clear();
+        }
+        return itemVal;
+    }
+
+    /**
+     * Create a field from its type and data
+     */
+    private static PwsField createField(int type, byte[] data, PwsFile file)
+            throws UnsupportedEncodingException
+    {
+        PwsField itemVal;
+        switch (type) {
+        case V3_ID_STRING:
+            itemVal = new PwsVersionField(type, data);
+            break;
+
+        case UUID:
+            itemVal = new PwsUUIDField(type, data);
+            break;
+
+        case GROUP:
+        case TITLE:
+        case USERNAME:
+        case NOTES:
+        case PASSWORD_POLICY:
+        case PASSWORD_HISTORY:
+        case URL:
+        case AUTOTYPE:
+        case RUN_COMMAND:
+        case EMAIL:
+        case OWN_PASSWORD_SYMBOLS:
+        case ICON:
+        case OTP:
+        case FIDO_RP_ID:
+        case FIDO_RP_NAME:
+        case FIDO_USER_HANDLE:
+        case FIDO_USER_NAME:
+        case FIDO_USER_DISPLAYNAME:
+        case FIDO_U2F_RP_ID:
+        case FIDO_KEY_PAIR:
+        case FIDO_HMAC_SECRET:
+        case PASSWORD_POLICY_NAME:
+            itemVal = new PwsStringUnicodeField(type, data);
+            break;
+
+        case PASSWORD:
+            itemVal = new PwsPasswdUnicodeField(type, data, file);
+            break;
+
+        case CREATION_TIME:
+        case PASSWORD_MOD_TIME:
+        case LAST_ACCESS_TIME:
+        case LAST_MOD_TIME:
+        case PASSWORD_LIFETIME:
+            itemVal = new PwsTimeField(type, data);
+            break;
+
+        case AUTOTYPE_DELIMITER:
+        case AUTOTYPE_RETURNSUFFIX:
+        case PASSWORD_EXPIRY_INTERVAL:
+        case ENTRY_KEYBOARD_SHORTCUT:
+        case FIDO_KEY_USE_COUNTER:
+            itemVal = new PwsIntegerField(type, data);
+            break;
+
+        case DOUBLE_CLICK_ACTION:
+        case SHIFT_DOUBLE_CLICK_ACTION:
+            itemVal = new PwsShortField(type, data);
+            break;
+
+        case PROTECTED_ENTRY:
+            itemVal = new PwsByteField(type, data);
+            break;
+
+        default:
+            itemVal = new PwsUnknownField(type, data);
+            break;
+        }
+        return itemVal;
     }
 
     /**
@@ -717,23 +1073,63 @@ public class PwsRecordV3 extends PwsRecord
     @Override
     protected void saveRecord(PwsFile file) throws IOException
     {
-        for (Iterator<Integer> iter = getFields(); iter.hasNext(); ) {
-            int type;
-            PwsField value;
+        for (int i = 0, numFields = getNumFields(); i < numFields; ++i) {
+            writeField(file, getFieldAt(i));
+        }
+        writeField(file, new PwsStringField(END_OF_RECORD, ""));
+    }
 
-            type = iter.next();
-            value = getField(type);
+    /**
+     * Gets the UUID of the record without decoding the deferred fields of a
+     * lazily loaded record as the UUID is always decoded when loading.
+     *
+     * @return The UUID; null if the record has none.
+     */
+    final UUID getLoadedUUID()
+    {
+        PwsField field;
+        synchronized (this) {
+            field = attributes.get(UUID);
+        }
+        return (field != null) ? (UUID)field.getValue() : null;
+    }
 
-            writeField(file, value);
+    /**
+     * Serializes the fields of the record for the file's journal.  Each
+     * field is its length, type, and data as in the file but without the
+     * padding to whole blocks.
+     *
+     * @return The serialized fields which the caller must clear.
+     */
+    byte[] getJournalFields()
+    {
+        int numFields = getNumFields();
+        byte[][] fieldData = new byte[numFields][];
+        int length = 0;
+        for (int i = 0; i < numFields; ++i) {
+            fieldData[i] = getFieldAt(i).getBytes();
+            length += 5 + fieldData[i].length;
+        }
 
-            PwsFileV3 fileV3 = (PwsFileV3)file;
-            fileV3.hasher.digest(value.getBytes());
+        byte[] fields = new byte[length];
+        int pos = 0;
+        for (int i = 0; i < numFields; ++i) {
+            byte[] data = fieldData[i];
+            int type = getFieldAt(i).getType();
+            Util.putIntToByteArray(fields, data.length, pos);
+            fields[pos + 4] = (byte)type;
+            System.arraycopy(data, 0, fields, pos + 5, data.length);
+            if (!ignoreFieldTypes && (type == PASSWORD)) {
+                Arrays.fill(data, (byte)0);
+            }
+            pos += 5 + data.length;
         }
-        writeField(file, new PwsStringField(END_OF_RECORD, ""));
+        return fields;
     }
 
     /**
-     * Writes a single field to the file.
+     * Writes a single field to the file and adds its data to the file's
+     * HMAC.
      *
      * @param file  the file to write the field to.
      * @param field the field to be written.
@@ -745,40 +1141,21 @@ public class PwsRecordV3 extends PwsRecord
     protected void writeField(PwsFile file, PwsField field, int type)
             throws IOException
     {
-        byte[] lenBlock = new byte[5];
+        PwsFileV3 fileV3 = (PwsFileV3)file;
         byte[] dataBlock = field.getBytes();
 
-        Util.putIntToByteArray(lenBlock, dataBlock.length, 0);
-        lenBlock[4] = (byte)type;
-
-        final int blockSize = 16;
-        byte[] nextBlock = new byte[blockSize];
-
-        int firstBlockLen = Math.min(dataBlock.length, 11);
-        System.arraycopy(lenBlock, 0, nextBlock, 0, lenBlock.length);
-        System.arraycopy(dataBlock, 0,
-                         nextBlock, lenBlock.length, firstBlockLen);
-        file.writeEncryptedBytes(nextBlock);
-
-        int bytesToWrite = dataBlock.length - 11;
-        if (bytesToWrite > 0) {
-            int blocksToWrite = bytesToWrite / blockSize;
-            int pos = 11;
-            int nextBlockLen = nextBlock.length;
-            for (int i = 0; i < blocksToWrite; ++i, pos += nextBlockLen) {
-                System.arraycopy(dataBlock, pos, nextBlock, 0, nextBlockLen);
-                file.writeEncryptedBytes(nextBlock);
-            }
-
-            if ((bytesToWrite % blockSize) != 0) {
-                int bytesWritten = pos - 11;
-                nextBlockLen = bytesToWrite - bytesWritten;
-                System.arraycopy(dataBlock, pos, nextBlock, 0, nextBlockLen);
-                Arrays.fill(nextBlock, nextBlockLen, nextBlock.length, (byte)0);
-                file.writeEncryptedBytes(nextBlock);
-            }
-        }
-
+        // The field is a 5 byte header followed by the data, padded to a
+        // whole number of blocks, which is encrypted in a single pass
+        final int blockSize = fileV3.getBlockSize();
+        int fieldLen = 5 + dataBlock.length;
+        byte[] fieldBlocks = new byte[
+                ((fieldLen + blockSize - 1) / blockSize) * blockSize];
+        Util.putIntToByteArray(fieldBlocks, dataBlock.length, 0);
+        fieldBlocks[4] = (byte)type;
+        System.arraycopy(dataBlock, 0, fieldBlocks, 5, dataBlock.length);
+
+        fileV3.writeEncryptedBytes(fieldBlocks, 0, fieldBlocks.length);
+        fileV3.hasher.digest(dataBlock);
     }
 
     /**
@@ -0,0 +1,175 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package org.pwsafe.lib.file;
+
+import org.pwsafe.lib.Util;
+import org.pwsafe.lib.crypto.InMemoryKey;
+import org.pwsafe.lib.exception.MemoryKeyException;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Seals values kept in memory, such as passwords, with AES-GCM under a random
+ * key for the file.  A sealed value is a single byte array of the nonce
+ * followed by the encrypted value and authentication tag.  Each value gets a
+ * unique nonce from a random prefix and a counter.  Values can be sealed and
+ * unsealed from several threads at once as each use takes its own cipher
+ * from a pool.  The key is hidden in an InMemoryKey, and each pooled cipher
+ * gets its key spec once when it is created.  The key and the pooled ciphers
+ * are cleared when the file is disposed.
+ */
+final class PwsSealer
+{
+    private static final String CIPHER_SPEC = "AES/GCM/NoPadding";
+    private static final String CIPHER_KEY_SPEC = "AES";
+    private static final int CIPHER_KEY_LEN = 16;
+    private static final int NONCE_PREFIX_LEN = 4;
+    private static final int NONCE_LEN = 12;
+    private static final int TAG_LEN = 16;
+
+    private final InMemoryKey itsKey = new InMemoryKey(CIPHER_KEY_LEN);
+    private boolean itsIsCleared = false;
+    private final PwsCipherPool<SealCipher> itsCiphers =
+            new PwsCipherPool<>(this::createCipher);
+    private final int itsNoncePrefix;
+    private final AtomicLong itsCounter = new AtomicLong();
+
+    /**
+     * Constructor
+     */
+    PwsSealer()
+    {
+        itsKey.init();
+
+        byte[] prefix = new byte[NONCE_PREFIX_LEN];
+        Util.newRandBytes(prefix);
+        itsNoncePrefix = Util.getIntFromByteArray(prefix, 0);
+    }
+
+    /**
+     * Seal a value
+     *
+     * @param value the value which the caller must clear
+     * @return The sealed value
+     */
+    byte[] seal(byte[] value)
+    {
+        byte[] sealed = new byte[NONCE_LEN + value.length + TAG_LEN];
+        long counter = itsCounter.getAndIncrement();
+        Util.putIntToByteArray(sealed, itsNoncePrefix, 0);
+        Util.putIntToByteArray(sealed, (int)(counter >>> 32), 4);
+        Util.putIntToByteArray(sealed, (int)counter, 8);
+
+        SealCipher cipher = itsCiphers.acquire();
+        try {
+            cipher.itsCipher.init(Cipher.ENCRYPT_MODE, cipher.itsKeySpec,
+                                  new GCMParameterSpec(TAG_LEN * 8, sealed,
+                                                       0, NONCE_LEN));
+            cipher.itsCipher.doFinal(value, 0, value.length,
+                                     sealed, NONCE_LEN);
+        } catch (GeneralSecurityException e) {
+            throw new MemoryKeyException(e);
+        } finally {
+            releaseCipher(cipher);
+        }
+        return sealed;
+    }
+
+    /**
+     * Unseal a value
+     *
+     * @param sealed the sealed value
+     * @return The value which the caller must clear
+     */
+    byte[] unseal(byte[] sealed)
+    {
+        SealCipher cipher = itsCiphers.acquire();
+        try {
+            cipher.itsCipher.init(Cipher.DECRYPT_MODE, cipher.itsKeySpec,
+                                  new GCMParameterSpec(TAG_LEN * 8, sealed,
+                                                       0, NONCE_LEN));
+            return cipher.itsCipher.doFinal(sealed, NONCE_LEN,
+                                            sealed.length - NONCE_LEN);
+        } catch (GeneralSecurityException e) {
+            throw new MemoryKeyException(e);
+        } finally {
+            releaseCipher(cipher);
+        }
+    }
+
+    /**
+     * Clear the key and the pooled ciphers.  Values can no longer be sealed
+     * or unsealed.
+     */
+    synchronized void clear()
+    {
+        itsIsCleared = true;
+        itsKey.dispose();
+        itsCiphers.clear();
+    }
+
+    /**
+     * Release a cipher to the pool unless the sealer is cleared
+     */
+    private synchronized void releaseCipher(SealCipher cipher)
+    {
+        if (!itsIsCleared) {
+            itsCiphers.release(cipher);
+        }
+    }
+
+    /**
+     * Create a cipher for the pool
+     */
+    private synchronized SealCipher createCipher()
+    {
+        if (itsIsCleared) {
+            throw new MemoryKeyException(
+                    new IllegalStateException("Sealer cleared"));
+        }
+
+        Cipher cipher;
+        try {
+            cipher = Cipher.getInstance(CIPHER_SPEC);
+        } catch (GeneralSecurityException e) {
+            throw new MemoryKeyException("memory key generation failed", e);
+        }
+
+        byte[] key = itsKey.getKey(CIPHER_KEY_LEN);
+        try {
+            return new SealCipher(cipher,
+                                  new SecretKeySpec(key, CIPHER_KEY_SPEC));
+        } finally {
+            Arrays.fill(key, (byte)0);
+        }
+    }
+
+    /**
+     * A pooled cipher with its key
+     */
+    private static final class SealCipher
+    {
+        final Cipher itsCipher;
+        final SecretKeySpec itsKeySpec;
+
+        /**
+         * Constructor
+         */
+        SealCipher(Cipher cipher, SecretKeySpec keySpec)
+        {
+            itsCipher = cipher;
+            itsKeySpec = keySpec;
+        }
+    }
+}
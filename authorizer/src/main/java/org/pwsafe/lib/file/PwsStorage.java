@@ -9,6 +9,8 @@ package org.pwsafe.lib.file;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
 
 /**
@@ -41,6 +43,18 @@ public interface PwsStorage
                 throws IOException;
     }
 
+    /**
+     * Writer of the (encrypted) bytes of a file being saved
+     */
+    interface SaveWriter
+    {
+        /**
+         * Write the bytes of the file to the stream.  The stream is owned
+         * by the storage and is not closed by the writer.
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
     /**
      * Open the file for loading
      *
@@ -56,26 +70,49 @@ public interface PwsStorage
      */
     byte[] load() throws IOException;
 
+    /**
+     * Get a stream over all the bytes in the file.  Unlike {@link #load()},
+     * the bytes are read from the storage as they are consumed rather than
+     * being buffered in memory.  The stream is closed by
+     * {@link #closeAfterLoad()}.
+     *
+     * @return The stream of bytes in the file
+     */
+    InputStream loadStream() throws IOException;
+
     /**
      * Close the file after being loaded
      */
     void closeAfterLoad() throws IOException;
 
     /**
-     * This method takes a series of bytes as input and then attempts
-     * to save them to the underlying storage provider.  It returns
-     * true if the save was successful and false otherwise.
+     * This method takes a writer of the bytes of the file and then attempts
+     * to save them to the underlying storage provider.  The bytes are
+     * streamed to the storage as they are written rather than being buffered
+     * in memory.  It returns true if the save was successful and false
+     * otherwise.
      * <p/>
      * Note that this interface does not care what version or format the
      * file is.  That is handled at the PwSFile layer.
      * <p/>
      *
-     * @param data The bytes making up the PasswordSafe file
+     * @param writer The writer of the bytes making up the PasswordSafe file
      * @param isV3 Is the file version 3
      * @return true if save was successful
+     * @throws IOException if the writer fails and the storage passes on
+     *                     the error
      */
     @SuppressWarnings({"BooleanMethodIsAlwaysInverted", "RedundantSuppression"})
-    boolean save(byte[] data, boolean isV3);
+    boolean save(SaveWriter writer, boolean isV3) throws IOException;
+
+    /**
+     * Get the file for a journal of the changes made to the password file
+     * since it was last saved in full.  The journal is only kept for
+     * storage where it can be written next to the password file.
+     *
+     * @return The journal file; null if not supported
+     */
+    File getJournalFile();
 
     /**
      * Returns a human readable identifier of this storage that might be
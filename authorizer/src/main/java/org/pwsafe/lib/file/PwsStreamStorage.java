@@ -8,7 +8,9 @@
 package org.pwsafe.lib.file;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
@@ -69,6 +71,17 @@ public class PwsStreamStorage implements PwsStorage
         return itsLoadBytes;
     }
 
+    public InputStream loadStream() throws IOException
+    {
+        if (itsLoadBytes != null) {
+            return new ByteArrayInputStream(itsLoadBytes);
+        }
+        if (itsLoadStream == null) {
+            throw new IOException("Stream closed for " + itsIdentifier);
+        }
+        return itsLoadStream;
+    }
+
     public void closeAfterLoad() throws IOException
     {
         itsLoadBytes = null;
@@ -81,12 +94,17 @@ public class PwsStreamStorage implements PwsStorage
         }
     }
 
-    public boolean save(byte[] data, boolean isV3)
+    public boolean save(SaveWriter writer, boolean isV3) throws IOException
     {
         // Can't save
         return false;
     }
 
+    public File getJournalFile()
+    {
+        return null;
+    }
+
     public String getIdentifier()
     {
         return itsIdentifier;
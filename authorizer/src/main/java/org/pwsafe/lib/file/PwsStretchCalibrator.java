@@ -0,0 +1,142 @@
+/*
+ * Copyright (©) 2026 Jeff Harris <jefftharris@gmail.com>
+ * All rights reserved. Use of the code is allowed under the
+ * Artistic License 2.0 terms, as specified in the LICENSE file
+ * distributed with this code, or available from
+ * http://www.opensource.org/licenses/artistic-license-2.0.php
+ */
+package org.pwsafe.lib.file;
+
+import org.pwsafe.lib.crypto.SHA256Pws;
+
+/**
+ * Calibrates the number of key stretch iterations for a V3 file so that
+ * unlocking the file takes about a target time on the current device.  The
+ * iterations are measured by timing SHA256Pws.digestN with increasing
+ * sample counts and scaling the last sample to the target.
+ */
+public final class PwsStretchCalibrator
+{
+    /**
+     * Minimum number of iterations allowed by the V3 format
+     */
+    public static final int MIN_ITER = 2048;
+
+    /**
+     * Maximum number of iterations used, as in Password Safe
+     */
+    public static final int MAX_ITER = 1 << 22;
+
+    /**
+     * Default target time to unlock a file
+     */
+    public static final long DEFAULT_TARGET_MS = 500;
+
+    /**
+     * Initial number of iterations to sample
+     */
+    private static final int SAMPLE_ITER = 1024;
+
+    /**
+     * Fraction of the target time for a sample to be used for the estimate
+     */
+    private static final int SAMPLE_TARGET_DIVISOR = 8;
+
+    /**
+     * Maximum number of times the final sample is repeated
+     */
+    private static final int MAX_SAMPLE_REPEATS = 8;
+
+    private static final long NANOS_PER_MS = 1000000;
+
+    /**
+     * A source of time for the calibration
+     */
+    public interface Clock
+    {
+        /**
+         * Get the current time in nanoseconds
+         */
+        long nanoTime();
+    }
+
+    private static final Clock SYSTEM_CLOCK = System::nanoTime;
+
+    private static int itsDeviceIter = 0;
+
+    /**
+     * Private to prevent instantiation
+     */
+    private PwsStretchCalibrator()
+    {
+    }
+
+    /**
+     * Get the iterations for the default target time on the device.  The
+     * calibration is done once and cached.
+     */
+    public static synchronized int getDeviceIterations()
+    {
+        if (itsDeviceIter == 0) {
+            itsDeviceIter = calibrate(DEFAULT_TARGET_MS, SYSTEM_CLOCK);
+        }
+        return itsDeviceIter;
+    }
+
+    /**
+     * Calibrate the iterations for a target unlock time
+     *
+     * @param targetMs the target time in milliseconds
+     * @param clock    the clock for timing the samples
+     * @return The number of iterations between MIN_ITER and MAX_ITER
+     */
+    public static int calibrate(long targetMs, Clock clock)
+    {
+        long targetNanos = targetMs * NANOS_PER_MS;
+        long minSampleNanos = targetNanos / SAMPLE_TARGET_DIVISOR;
+        byte[] input = new byte[32];
+
+        // The first hash is not timed as it includes one-time costs such as
+        // loading the hash code
+        SHA256Pws.digestN(input, SAMPLE_ITER);
+
+        int sampleIter = SAMPLE_ITER;
+        long elapsed;
+        while (true) {
+            elapsed = timeSample(input, sampleIter, clock);
+            if ((elapsed >= minSampleNanos) || (sampleIter >= MAX_ITER)) {
+                break;
+            }
+            sampleIter *= 2;
+        }
+
+        // Repeat the final sample while it speeds up as the earlier samples
+        // can be slowed by compiling the hash code
+        for (int i = 0; i < MAX_SAMPLE_REPEATS; ++i) {
+            long repeat = timeSample(input, sampleIter, clock);
+            boolean faster = (repeat < elapsed - elapsed / 10);
+            elapsed = Math.min(elapsed, repeat);
+            if (!faster) {
+                break;
+            }
+        }
+
+        if (elapsed <= 0) {
+            return MAX_ITER;
+        }
+        long iter = (sampleIter * targetNanos) / elapsed;
+        return (int)Math.max(MIN_ITER, Math.min(MAX_ITER, iter));
+    }
+
+    /**
+     * Time hashing an input for a number of iterations
+     *
+     * @return The elapsed time in nanoseconds
+     */
+    private static long timeSample(byte[] input, int iter, Clock clock)
+    {
+        long start = clock.nanoTime();
+        SHA256Pws.digestN(input, iter);
+        return clock.nanoTime() - start;
+    }
+}
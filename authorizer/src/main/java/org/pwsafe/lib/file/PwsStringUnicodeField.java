@@ -10,14 +10,22 @@ package org.pwsafe.lib.file;
 import androidx.annotation.NonNull;
 
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
 /**
+ * A string field stored as UTF-8.  A field read from a file keeps its UTF-8
+ * bytes, which are decoded to a String only when the value is first used and
+ * are written back as is when the file is saved.
+ *
  * @author Kevin Preece
  */
 public class PwsStringUnicodeField extends PwsField
 {
     private static final long serialVersionUID = -4530429748953931053L;
 
+    private byte[] itsBytes;
+    private String itsValue;
+
     /**
      * Constructor
      *
@@ -27,9 +35,8 @@ public class PwsStringUnicodeField extends PwsField
     public PwsStringUnicodeField(int type, byte[] value)
             throws UnsupportedEncodingException
     {
-
-        //noinspection CharsetObjectCanBeUsed
-        super(type, new String(value, "UTF-8"));
+        super(type, null);
+        itsBytes = Arrays.copyOf(value, value.length);
     }
 
     /**
@@ -41,6 +48,7 @@ public class PwsStringUnicodeField extends PwsField
     public PwsStringUnicodeField(int type, String value)
     {
         super(type, value);
+        itsValue = value;
     }
 
     /**
@@ -54,10 +62,33 @@ public class PwsStringUnicodeField extends PwsField
             @SuppressWarnings("SameParameterValue") String value)
     {
         super(type, value);
+        itsValue = value;
+    }
+
+    /**
+     * Returns the field's value, decoding it from UTF-8 when first used.
+     *
+     * @return The field's value as a String.
+     */
+    @Override
+    public Object getValue()
+    {
+        String value = itsValue;
+        if (value == null) {
+            try {
+                //noinspection CharsetObjectCanBeUsed
+                value = new String(itsBytes, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+            itsValue = value;
+        }
+        return value;
     }
 
     /**
-     * Returns the field's value as a byte array.
+     * Returns the field's value as a byte array.  The UTF-8 bytes are kept
+     * by the field, so a copy is returned which the caller may change.
      *
      * @return A byte array containing the field's data.
      * @see org.pwsafe.lib.file.PwsField#getBytes()
@@ -65,12 +96,17 @@ public class PwsStringUnicodeField extends PwsField
     @Override
     public byte[] getBytes()
     {
-        try {
-            //noinspection CharsetObjectCanBeUsed
-            return ((String)super.getValue()).getBytes("UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+        byte[] bytes = itsBytes;
+        if (bytes == null) {
+            try {
+                //noinspection CharsetObjectCanBeUsed
+                bytes = itsValue.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+            itsBytes = bytes;
         }
+        return Arrays.copyOf(bytes, bytes.length);
     }
 
     /**
@@ -103,10 +139,10 @@ public class PwsStringUnicodeField extends PwsField
     public boolean equals(Object arg0)
     {
         if (arg0 instanceof PwsStringUnicodeField) {
-            return super.getValue().equals(
+            return getValue().equals(
                     ((PwsStringUnicodeField)arg0).getValue());
         } else if (arg0 instanceof String) {
-            return super.getValue().equals(arg0);
+            return getValue().equals(arg0);
         }
         throw new ClassCastException();
     }